@@ -0,0 +1,35 @@
+#!/bin/sh
+# Arranca en localhost N servidores de salas (sin GUI) y un Gateway delante.
+#
+#   scripts/cluster-local.sh [N]
+#
+# Variables:
+#   CP      Classpath con las clases compiladas (por defecto target/classes)
+#   PUERTO  Puerto público del gateway (por defecto 12345); los servidores usan PUERTO+1 .. PUERTO+N
+#   SALA    Jugadores por sala (por defecto 4)
+#
+# Los clientes se conectan al gateway como si fuera un servidor normal. Las
+# órdenes del gateway (estado, drenar N, reanudar N) se escriben en esta terminal.
+# Ctrl+C detiene el gateway y todos los servidores.
+
+N=${1:-2}
+CP=${CP:-target/classes}
+PUERTO=${PUERTO:-12345}
+SALA=${SALA:-4}
+
+PIDS=""
+BACKENDS=""
+i=1
+while [ "$i" -le "$N" ]; do
+    PUERTO_SALAS=$((PUERTO + i))
+    java -cp "$CP" com.dirac.spaceinvaders.core.Servidor --headless --port="$PUERTO_SALAS" \
+        --max-players="$SALA" > "servidor-$i.log" 2>&1 &
+    PIDS="$PIDS $!"
+    BACKENDS="$BACKENDS${BACKENDS:+,}127.0.0.1:$PUERTO_SALAS"
+    echo "Servidor de salas $((i - 1)) en el puerto $PUERTO_SALAS (log: servidor-$i.log)"
+    i=$((i + 1))
+done
+trap 'kill $PIDS 2>/dev/null' EXIT INT TERM
+
+sleep 1
+java -cp "$CP" com.dirac.spaceinvaders.core.Gateway --port="$PUERTO" --backends="$BACKENDS"
@@ -2,16 +2,31 @@ package com.dirac.spaceinvaders.core;
 
 import com.dirac.spaceinvaders.game.GamePanel;   // Panel de dibujo
 import com.dirac.spaceinvaders.game.GameState;  // Objeto de estado
-import com.dirac.spaceinvaders.net.MessageAction; // Acciones a enviar
+import com.dirac.spaceinvaders.game.Player;     // Nave propia (predicción)
+import com.dirac.spaceinvaders.net.InputCommand;  // Comandos de entrada (máscara de botones)
+import com.dirac.spaceinvaders.net.Snapshot;        // Estado completo reconstruido
+import com.dirac.spaceinvaders.net.SnapshotCodec;   // Decodificación binaria del estado
+import com.dirac.spaceinvaders.net.SnapshotHistory; // Líneas base para aplicar deltas
+import com.dirac.spaceinvaders.net.SnapshotInterpolator; // Dibujo suave entre snapshots
+import com.dirac.spaceinvaders.net.WireProtocol;  // Tramas del protocolo
 import java.awt.*; // GUI
 import java.awt.event.*;    // Layouts, Dimension, etc.
+import java.io.BufferedInputStream;  // Buffer de lectura del socket
+import java.io.BufferedOutputStream; // Buffer de escritura del socket
+import java.io.DataInputStream;  // Leer tramas del servidor
+import java.io.DataOutputStream; // Enviar tramas al servidor
 import java.io.IOException; // Listeners (ActionListener, KeyAdapter)
-import java.io.ObjectInputStream; // Excepciones de red
-import java.io.ObjectOutputStream; // Leer estado del servidor
 import java.net.ConnectException; // Enviar acciones al servidor
+import java.net.DatagramPacket;   // Datagramas UDP
+import java.net.DatagramSocket;   // Transporte UDP opcional
+import java.net.InetSocketAddress; // Dirección UDP del servidor
 import java.net.Socket; // Error específico de conexión
 import java.net.SocketException;           // Socket del cliente
 import java.net.UnknownHostException;  // Error de socket
+import java.nio.ByteBuffer; // Payload del snapshot
+import java.util.ArrayDeque; // Comandos predichos pendientes de confirmar
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.*; // Host no encontrado
 
 /**
@@ -23,22 +38,57 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
     // --- Constantes ---
     private static final String DEFAULT_SERVER_IP = "127.0.0.1"; // IP por defecto (localhost)
     private static final int DEFAULT_SERVER_PORT = 12345;      // Puerto por defecto
+    private static final int UDP_HANDSHAKE_TIMEOUT_MS = 3000;  // Espera máxima del primer snapshot por UDP
+    private static final int DEFAULT_INPUT_INTERVAL_MS = 50;   // Muestreo de controles hasta conocer el tick del servidor
+    private static final int MAX_PREDICTED_INPUTS = 128;       // Comandos sin confirmar que se guardan para repetir
+    private static final int RENDER_INTERVAL_MS = 16;          // Cuadros de dibujo (~60 FPS), independientes de la red
+    private static final long INTERPOLATION_DELAY_NANOS = 100_000_000L; // Se dibuja 100 ms en el pasado (2 snapshots a 20 Hz)
+    private static final long MAX_EXTRAPOLATION_NANOS = 50_000_000L;    // Si faltan snapshots, se extrapola como mucho 50 ms
 
     // --- Componentes de Red ---
     private String serverIp;             // IP del servidor al que conectar
     private int serverPort;              // Puerto del servidor
     private Socket socket;               // Socket para la conexión con el servidor
-    private ObjectOutputStream outputStream; // Stream para enviar acciones (MessageAction)
-    private ObjectInputStream inputStream;  // Stream para recibir estado (GameState)
+    private DataOutputStream outputStream; // Stream para enviar comandos de entrada y confirmaciones
+    private DataInputStream inputStream;  // Stream para recibir estado (snapshots binarios)
     private volatile boolean connected = false; // Indica si estamos conectados
     private volatile boolean listening = false; // Controla el hilo de escucha
     private int myPlayerId = -1; // ID asignado por el servidor
+    // Snapshots ya reconstruidos; el servidor envía deltas respecto al último confirmado.
+    private final SnapshotHistory receivedSnapshots = new SnapshotHistory();
+    private volatile int lastAppliedTick = -1; // Tick del último snapshot aplicado (descarta los atrasados)
+    // Los snapshots no se dibujan al llegar: el temporizador de dibujo interpola entre ellos.
+    private final SnapshotInterpolator interpolator = new SnapshotInterpolator(
+            ServerConfig.DEFAULT_TICK_RATE_HZ, INTERPOLATION_DELAY_NANOS, MAX_EXTRAPOLATION_NANOS);
+    private volatile boolean spectating = false; // Conectado al puerto de espectadores: sin entradas ni ACK
+
+    // --- Transporte UDP (opcional) ---
+    private boolean useUdp = false;              // El usuario marcó "UDP" al conectar
+    private volatile DatagramSocket udpSocket;   // Socket UDP, null si no se usa
+    private int udpToken;                        // Token recibido en MSG_UDP_OFFER
+    private long udpOfferedAt;                   // Momento en que se empezó a saludar por UDP
+    private volatile boolean udpActive = false;  // Ya llegan snapshots por UDP: las entradas van por UDP
+    private final Object udpLock = new Object(); // Protege los comandos recientes y el buffer de envío
+    private final List<InputCommand> recentInputs = new ArrayList<>(); // Últimos comandos, se repiten en cada paquete
+    private final ByteBuffer udpSendBuffer = ByteBuffer.allocate(WireProtocol.MAX_DATAGRAM_BYTES);
+
+    // --- Predicción de la Nave Propia ---
+    // La nave propia se mueve en cuanto se muestrea cada comando, sin esperar al
+    // servidor. Con cada snapshot se parte de la posición autoritativa y se repiten
+    // los comandos que el servidor aún no había aplicado (reconciliación).
+    private final Object predictionLock = new Object();
+    private final ArrayDeque<InputCommand> unackedInputs = new ArrayDeque<>(); // Enviados y aún no aplicados
+    private volatile int renderedTick = -1; // Tick del último cuadro dibujado; viaja en cada comando
+    private Player predictedPlayer; // Nave propia: último snapshot más los comandos pendientes (null si no está en juego)
+    private int lastReconciledTick = -1; // Tick del último snapshot reconciliado (bajo predictionLock)
 
     // --- Componentes de la GUI ---
     private JFrame clientFrame;    // Ventana principal
     private JTextField ipField;      // Campo para IP del servidor
     private JTextField portField;    // Campo para Puerto del servidor
     private JTextField nameField;  // Campo para nombre de jugador
+    private JCheckBox udpCheckBox; // Usar UDP para snapshots y entradas
+    private JCheckBox spectatorCheckBox; // Conectar como espectador (puerto de espectadores del servidor)
     private JButton connectButton;  // Botón Conectar/Desconectar
     private GamePanel gamePanel;    // Panel donde se dibuja el juego
     // Podríamos añadir botones para controles como en el PDF, pero KeyListener es más común para juegos
@@ -50,9 +100,14 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
     private volatile boolean movingRight = false;
     private boolean movingUp = false;     // ← Agregar esto
     private boolean movingDown = false;   // ← Y esto también
+    private boolean shootRequested = false; // Disparo pulsado desde el último muestreo (EDT)
+    private int clientTick = 0;             // Cuadros muestreados en esta conexión (EDT)
+    private int lastSentButtons = 0;        // Últimos botones enviados por TCP (EDT)
 
     // Timer para movimiento continuo
     private Timer movementTimer;
+    // Timer de dibujo: interpola el estado a ~60 FPS aunque los snapshots lleguen a 20 Hz
+    private Timer renderTimer;
     // --- Constructor ---
     /**
      * Constructor del Cliente. Inicializa la GUI.
@@ -60,19 +115,147 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
     public Cliente() {
         setupGUI();
         initMovementTimer();
+        renderTimer = new Timer(RENDER_INTERVAL_MS, e -> {
+            if (connected) renderFrame();
+        });
+        renderTimer.start();
     }
 
     private void initMovementTimer() {
-        movementTimer = new Timer(50, e -> {
-            if (connected) {
-                if (movingLeft)  sendActionToServer(MessageAction.MOVE_LEFT);
-                if (movingRight) sendActionToServer(MessageAction.MOVE_RIGHT);
-                if (movingUp)    sendActionToServer(MessageAction.MOVE_UP);
-                if (movingDown)  sendActionToServer(MessageAction.MOVE_DOWN);
+        movementTimer = new Timer(DEFAULT_INPUT_INTERVAL_MS, e -> {
+            if (!connected) return;
+            if (!udpActive && udpSocket != null
+                    && System.currentTimeMillis() - udpOfferedAt > UDP_HANDSHAKE_TIMEOUT_MS) {
+                showError("No llegan datos por UDP (¿firewall o NAT?).\nDesmarca UDP y vuelve a conectar.");
+                disconnect();
+                return;
             }
+            if (!spectating) sampleInput();
         });
         movementTimer.start();
     }
+
+    /**
+     * Muestrea los controles una vez por cuadro y envía un único comando con
+     * todos los botones pulsados y el tick del cliente. Se llama en el EDT.
+     */
+    private void sampleInput() {
+        int buttons = 0;
+        if (movingLeft)  buttons |= InputCommand.BUTTON_LEFT;
+        if (movingRight) buttons |= InputCommand.BUTTON_RIGHT;
+        if (movingUp)    buttons |= InputCommand.BUTTON_UP;
+        if (movingDown)  buttons |= InputCommand.BUTTON_DOWN;
+        if (shootRequested) buttons |= InputCommand.BUTTON_SHOOT;
+        shootRequested = false;
+        // El tick dibujado permite al servidor resolver el disparo contra lo que se veía.
+        InputCommand command = new InputCommand(++clientTick, buttons, renderedTick);
+
+        if (udpActive) {
+            // Cada paquete repite los últimos comandos; también sirve de keepalive y confirmación.
+            queueInput(command);
+            sendUdpPacket();
+            predict(command);
+            return;
+        }
+        // Por TCP sólo se envía cuando hay algo pulsado o cambia (para comunicar la liberación).
+        if (buttons != 0 || buttons != lastSentButtons) {
+            sendCommandToServer(command);
+            lastSentButtons = buttons;
+            predict(command);
+        }
+        if (udpSocket != null) {
+            sendUdpPacket(); // Saludo UDP pendiente: se repite hasta recibir el primer snapshot por UDP.
+        }
+    }
+    // --- Predicción y Reconciliación ---
+    /**
+     * Aplica un comando recién enviado a la nave propia, igual que hará el servidor
+     * ({@link Player#step}), y lo guarda hasta que un snapshot lo confirme. Se llama en el EDT.
+     * @param command Comando enviado.
+     */
+    private void predict(InputCommand command) {
+        synchronized (predictionLock) {
+            if (predictedPlayer == null) return; // Sin nave (muerto o aún sin snapshot): nada que predecir
+            if (unackedInputs.size() >= MAX_PREDICTED_INPUTS) {
+                unackedInputs.poll(); // El servidor no responde; la corrección llegará con el próximo snapshot
+            }
+            unackedInputs.offer(command);
+            step(predictedPlayer, command.getButtons());
+        }
+        renderFrame(); // La nave se mueve en este mismo cuadro, sin esperar al temporizador
+    }
+
+    /**
+     * Reconcilia la nave propia con un estado recién recibido: olvida los comandos
+     * que el servidor ya aplicó (hasta el tick del cliente que indica el snapshot)
+     * y repite los demás sobre la posición autoritativa. Si la predicción era
+     * correcta, la nave no se mueve en pantalla.
+     *
+     * Lo llaman los hilos de escucha TCP y UDP: un snapshot más antiguo que el
+     * último reconciliado se ignora, porque repondría una posición caducada sin
+     * los comandos que el más nuevo ya descartó. Sólo se lee la nave propia de
+     * los arrays del snapshot, sin reconstruir el estado entero.
+     * @param snapshot Snapshot recién aplicado.
+     */
+    private void reconcile(Snapshot snapshot) {
+        synchronized (predictionLock) {
+            if (snapshot.getTick() <= lastReconciledTick) return;
+            lastReconciledTick = snapshot.getTick();
+            Player own = null;
+            for (int i = 0; i < snapshot.getEntityCount(); i++) {
+                if (snapshot.getType(i) == Snapshot.TYPE_PLAYER
+                        && snapshot.getField(i, Snapshot.F_PLAYER_ID) == myPlayerId) {
+                    own = new Player(snapshot.getField(i, Snapshot.F_X), snapshot.getField(i, Snapshot.F_Y), myPlayerId,
+                            new Color(snapshot.getField(i, Snapshot.F_PLAYER_RGB), true));
+                    own.setLastInputTick(snapshot.getField(i, Snapshot.F_PLAYER_INPUT_TICK));
+                    break;
+                }
+            }
+            predictedPlayer = own;
+            if (own == null) {
+                unackedInputs.clear();
+                return;
+            }
+            int appliedTick = own.getLastInputTick();
+            while (!unackedInputs.isEmpty() && unackedInputs.peek().getClientTick() <= appliedTick) {
+                unackedInputs.poll();
+            }
+            for (InputCommand command : unackedInputs) {
+                step(own, command.getButtons());
+            }
+        }
+    }
+
+    private static void step(Player player, int buttons) {
+        player.step((buttons & InputCommand.BUTTON_LEFT) != 0, (buttons & InputCommand.BUTTON_RIGHT) != 0,
+                (buttons & InputCommand.BUTTON_UP) != 0, (buttons & InputCommand.BUTTON_DOWN) != 0);
+    }
+
+    // --- Dibujo ---
+    /**
+     * Dibuja un cuadro: el resto de entidades, interpoladas un poco en el pasado
+     * ({@link SnapshotInterpolator}); la nave propia, en su posición predicha,
+     * que ya va por delante del servidor. Se llama en el EDT.
+     */
+    private void renderFrame() {
+        Snapshot snapshot = interpolator.sample(System.nanoTime());
+        if (snapshot == null) return;
+        renderedTick = snapshot.getTick();
+        GameState state = snapshot.toGameState();
+        synchronized (predictionLock) {
+            if (predictedPlayer != null) {
+                for (Player p : state.getPlayers()) {
+                    if (p.getPlayerId() == myPlayerId) {
+                        p.setX(predictedPlayer.getX());
+                        p.setY(predictedPlayer.getY());
+                        break;
+                    }
+                }
+            }
+        }
+        gamePanel.updateGameState(state);
+    }
+
     // --- Configuración de la GUI ---
     /**
      * Configura la interfaz gráfica de usuario (GUI) del cliente.
@@ -94,6 +277,12 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
         topPanel.add(new JLabel("Nombre:"));
         nameField = new JTextField(10);
         topPanel.add(nameField);
+        udpCheckBox = new JCheckBox("UDP");
+        udpCheckBox.setToolTipText("Snapshots y entradas por UDP (menos latencia con pérdida de paquetes)");
+        topPanel.add(udpCheckBox);
+        spectatorCheckBox = new JCheckBox("Espectador");
+        spectatorCheckBox.setToolTipText("Ver una partida sin jugar (usa el puerto de espectadores del servidor)");
+        topPanel.add(spectatorCheckBox);
         connectButton = new JButton("Conectar");
         connectButton.addActionListener(e -> toggleConnection());
         topPanel.add(connectButton);
@@ -141,6 +330,10 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
             try {
                 serverIp = ipField.getText();
                 serverPort = Integer.parseInt(portField.getText());
+                spectating = spectatorCheckBox.isSelected();
+                useUdp = udpCheckBox.isSelected() && !spectating; // Los espectadores sólo reciben por TCP
+                clientTick = 0;      // Cada conexión empieza su propia secuencia de comandos
+                lastSentButtons = 0;
                 if (serverPort < 1024 || serverPort > 65535) throw new NumberFormatException("Puerto inválido");
 
                 // Intenta establecer la conexión. El constructor de Socket puede bloquear.
@@ -153,27 +346,54 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
                         socket = new Socket(serverIp, serverPort); // Intenta conectar
 
                         // Si la conexión tiene éxito:
-                        outputStream = new ObjectOutputStream(socket.getOutputStream());
-                        inputStream = new ObjectInputStream(socket.getInputStream());
+                        outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                        inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
                         connected = true;
                         listening = true; // Activa bandera para el hilo de escucha
+                        receivedSnapshots.clear(); // Los ticks de una conexión anterior no sirven de base
+                        lastAppliedTick = -1;
+                        renderedTick = -1;
+                        synchronized (predictionLock) {
+                            unackedInputs.clear();
+                            predictedPlayer = null;
+                            lastReconciledTick = -1;
+                        }
+                        if (spectating) {
+                            // Pide ver cualquier sala; el servidor responde con MSG_ID de espectador.
+                            WireProtocol.writeSpectateFrame(outputStream, WireProtocol.ANY_ROOM);
+                            outputStream.flush();
+                        }
 
-                        // Lee el ID asignado por el servidor (espera el formato "ID:X")
-                        Object idMessage = inputStream.readObject();
-                        if (idMessage instanceof String && ((String)idMessage).startsWith("ID:")) {
+                        // Lee el ID asignado por el servidor (trama MSG_ID con versión de protocolo)
+                        WireProtocol.Frame idFrame = WireProtocol.readFrame(inputStream);
+                        if (idFrame.getType() == WireProtocol.MSG_ID) {
                              try {
-                                myPlayerId = Integer.parseInt(((String)idMessage).substring(3));
-                                String namePlayer = nameField.getText();
-                                clientFrame.setTitle("Cliente Space Invaders - Jugador " + namePlayer); // Actualiza título ventana
-                                setStatus("Conectado como Jugador " + myPlayerId);
-                             } catch (NumberFormatException nfe) {
-                                 System.err.println("Error parseando ID del servidor: " + idMessage);
-                                 setStatus("Error: ID inválido recibido.");
-                                 disconnect(); // Desconecta si el ID es incorrecto
+                                myPlayerId = WireProtocol.parseIdPayload(idFrame.getPayload());
+                                int announcedRate = WireProtocol.parseIdTickRate(idFrame.getPayload());
+                                int serverTickRate = announcedRate > 0 ? announcedRate : ServerConfig.DEFAULT_TICK_RATE_HZ;
+                                interpolator.reset(serverTickRate);
+                                synchronized (receivedSnapshots) {
+                                    // Mismo tamaño que el historial del servidor, para no perder la línea base.
+                                    receivedSnapshots.reset(SnapshotHistory.capacityFor(serverTickRate));
+                                }
+                                // Un comando por tick del servidor: lo que la nave predice es lo que el servidor aplica.
+                                SwingUtilities.invokeLater(() -> movementTimer.setDelay(Math.max(1, 1000 / serverTickRate)));
+                                if (spectating) {
+                                    clientFrame.setTitle("Cliente Space Invaders - Espectador");
+                                    setStatus("Conectado como espectador");
+                                } else {
+                                    String namePlayer = nameField.getText();
+                                    clientFrame.setTitle("Cliente Space Invaders - Jugador " + namePlayer); // Actualiza título ventana
+                                    setStatus("Conectado como Jugador " + myPlayerId);
+                                }
+                             } catch (IOException ioe) {
+                                 System.err.println("Error en el handshake con el servidor: " + ioe.getMessage());
+                                 setStatus("Error: " + ioe.getMessage());
+                                 disconnect(); // Desconecta si el ID o la versión son incorrectos
                                  return;
                              }
                         } else {
-                             System.err.println("Mensaje inesperado al esperar ID: " + idMessage);
+                             System.err.println("Trama inesperada al esperar ID: tipo " + idFrame.getType());
                              setStatus("Error: Respuesta inicial del servidor inesperada.");
                              disconnect();
                              return;
@@ -189,6 +409,8 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
                             connectButton.setEnabled(true);
                             ipField.setEnabled(false);
                             portField.setEnabled(false);
+                            udpCheckBox.setEnabled(false);
+                            spectatorCheckBox.setEnabled(false);
                             gamePanel.requestFocusInWindow();
 
                         });
@@ -200,7 +422,7 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
                     } catch (UnknownHostException uhe) {
                          showError("Error: Host desconocido.\nNo se pudo encontrar el servidor en la dirección IP: " + serverIp);
                          resetConnectionUI();
-                    } catch (IOException | ClassNotFoundException e) {
+                    } catch (IOException e) {
                          showError("Error durante la conexión o lectura inicial: " + e.getMessage());
                          resetConnectionUI();
                          disconnect(); // Intenta limpiar si algo se creó
@@ -223,6 +445,7 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
         setStatus("Desconectando...");
         connected = false;
         listening = false; // Indica al hilo de escucha que se detenga
+        closeUdp();
 
         try {
             // Cierra los streams y el socket. Es importante cerrar streams primero.
@@ -258,6 +481,8 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
              connectButton.setEnabled(true);
              ipField.setEnabled(true);
              portField.setEnabled(true);
+             udpCheckBox.setEnabled(true);
+             spectatorCheckBox.setEnabled(true);
              clientFrame.setTitle("Cliente Space Invaders");
          });
     }
@@ -288,26 +513,27 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
 
     // --- Hilo de Escucha del Servidor (Runnable) ---
     /**
-     * Método run(): Escucha continuamente los objetos GameState enviados por el servidor.
-     * Se ejecuta en un hilo separado una vez conectado.
+     * Método run(): Escucha continuamente los snapshots enviados por el servidor
+     * y los decodifica a GameState. Se ejecuta en un hilo separado una vez conectado.
      */
     @Override
     public void run() {
         try {
             while (listening && connected && inputStream != null) {
-                // Lee el siguiente objeto del servidor (bloqueante).
-                Object receivedObject = inputStream.readObject();
-
-                // Verifica si es un GameState.
-                if (receivedObject instanceof GameState) {
-                    GameState newState = (GameState) receivedObject;
-                    // Actualiza el panel del juego con el nuevo estado.
-                    // updateGameState ya llama a repaint() internamente.
-                    // Esta llamada debe ser segura para hilos, GamePanel usa 'volatile'.
-                    gamePanel.updateGameState(newState);
+                // Lee la siguiente trama del servidor (bloqueante).
+                WireProtocol.Frame frame = WireProtocol.readFrame(inputStream);
+
+                // Verifica si es un snapshot.
+                if (frame.getType() == WireProtocol.MSG_SNAPSHOT) {
+                    applySnapshot(ByteBuffer.wrap(frame.getPayload()));
+                } else if (frame.getType() == WireProtocol.MSG_UDP_OFFER) {
+                    // El servidor admite UDP; sólo se usa si el usuario lo pidió.
+                    if (useUdp) {
+                        startUdp(frame.getPayload());
+                    }
                 } else {
                     // Recibido algo inesperado.
-                    System.err.println("Cliente: Recibido objeto inesperado del servidor: " + receivedObject);
+                    System.err.println("Cliente: Recibida trama inesperada del servidor (tipo " + frame.getType() + ")");
                 }
             }
         } catch (SocketException se) {
@@ -319,10 +545,6 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
              if (listening) {
                  showError("Error de I/O leyendo del servidor: " + e.getMessage());
              }
-        } catch (ClassNotFoundException e) {
-             if (listening) {
-                 showError("Error: Clase no encontrada al leer GameState del servidor: " + e.getMessage());
-             }
         } finally {
             // Asegura la desconexión si el bucle termina por cualquier razón.
             if (connected) {
@@ -332,6 +554,131 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
         }
     }
 
+    /**
+     * Decodifica un snapshot (llegado por TCP o UDP), lo confirma y lo guarda para dibujarlo.
+     * Por UDP pueden llegar desordenados o repetidos: los atrasados se ignoran.
+     * @param payload Payload de la trama MSG_SNAPSHOT.
+     * @throws IOException Si falta la línea base o el snapshot es inválido.
+     */
+    private void applySnapshot(ByteBuffer payload) throws IOException {
+        Snapshot snapshot;
+        synchronized (receivedSnapshots) { // Lo usan el hilo TCP y el UDP
+            // Reconstruye el estado completo aplicando el delta sobre su línea base.
+            snapshot = SnapshotCodec.decode(payload, receivedSnapshots);
+            if (snapshot.getTick() <= lastAppliedTick) return;
+            receivedSnapshots.put(snapshot);
+            lastAppliedTick = snapshot.getTick();
+        }
+        if (!udpActive && !spectating) { // Los espectadores no confirman: su flujo es compartido
+            sendAck(snapshot.getTick());
+        }
+        if (udpSocket != null) {
+            sendUdpPacket(); // La confirmación viaja en el paquete de entrada
+        }
+        interpolator.add(snapshot, System.nanoTime());
+        if (!spectating) {
+            // La nave propia se dibuja donde la dejan los comandos que el servidor aún no ha aplicado.
+            reconcile(snapshot);
+        }
+        // No se dibuja aquí: el temporizador de dibujo (renderFrame) interpola entre snapshots.
+    }
+
+    // --- Transporte UDP ---
+    /**
+     * Abre el socket UDP tras recibir la oferta del servidor y empieza a saludar.
+     * Mientras no llegue el primer snapshot por UDP, todo sigue yendo por TCP.
+     * @param offerPayload Payload de MSG_UDP_OFFER.
+     */
+    private void startUdp(byte[] offerPayload) {
+        try {
+            int[] offer = WireProtocol.parseUdpOfferPayload(offerPayload);
+            DatagramSocket socketUdp = new DatagramSocket();
+            socketUdp.connect(new InetSocketAddress(serverIp, offer[1])); // Sólo acepta datagramas del servidor
+            udpToken = offer[0];
+            udpOfferedAt = System.currentTimeMillis();
+            udpSocket = socketUdp;
+            new Thread(() -> udpReceiveLoop(socketUdp), "udp-receiver").start();
+            sendUdpPacket(); // Saludo inicial
+            setStatus("Negociando UDP con el servidor...");
+        } catch (IOException e) {
+            System.err.println("Cliente: No se pudo iniciar UDP, se sigue por TCP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recibe snapshots por UDP hasta que se cierre el socket.
+     * Un snapshot cuya línea base ya no existe se descarta sin más: el siguiente lo sustituye.
+     */
+    private void udpReceiveLoop(DatagramSocket socketUdp) {
+        byte[] buffer = new byte[1500];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (listening && !socketUdp.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socketUdp.receive(packet);
+                ByteBuffer datagram = ByteBuffer.wrap(buffer, 0, packet.getLength());
+                if (datagram.remaining() < WireProtocol.FRAME_HEADER_BYTES) continue;
+                byte type = datagram.get();
+                int length = datagram.getInt();
+                if (type != WireProtocol.MSG_SNAPSHOT || length != datagram.remaining()) continue;
+                if (!udpActive) {
+                    udpActive = true;
+                    setStatus("Recibiendo snapshots por UDP.");
+                }
+                applySnapshot(datagram.slice());
+            } catch (SocketException se) {
+                break; // Socket cerrado al desconectar.
+            } catch (IOException e) {
+                // Snapshot perdido o con línea base caducada: se espera al siguiente.
+            }
+        }
+    }
+
+    /**
+     * Añade un comando a los recientes y conserva sólo los últimos.
+     * @param command Comando del cuadro actual.
+     */
+    private void queueInput(InputCommand command) {
+        synchronized (udpLock) {
+            recentInputs.add(command);
+            if (recentInputs.size() > WireProtocol.INPUT_REDUNDANCY) {
+                recentInputs.remove(0);
+            }
+        }
+    }
+
+    /**
+     * Envía un paquete de entrada UDP: confirmación del último snapshot y los
+     * últimos comandos de entrada. Si se pierde, el siguiente repite lo mismo.
+     */
+    private void sendUdpPacket() {
+        DatagramSocket socketUdp = udpSocket;
+        if (socketUdp == null) return;
+        synchronized (udpLock) {
+            WireProtocol.writeInputDatagram(udpSendBuffer, myPlayerId, udpToken, lastAppliedTick, recentInputs);
+            try {
+                socketUdp.send(new DatagramPacket(udpSendBuffer.array(), 0, udpSendBuffer.limit()));
+            } catch (IOException e) {
+                // UDP no garantiza entrega: el siguiente paquete repetirá estos comandos.
+            }
+        }
+    }
+
+    /**
+     * Cierra el socket UDP (si existe) y olvida los comandos pendientes.
+     */
+    private void closeUdp() {
+        DatagramSocket socketUdp = udpSocket;
+        udpSocket = null;
+        udpActive = false;
+        if (socketUdp != null) {
+            socketUdp.close();
+        }
+        synchronized (udpLock) {
+            recentInputs.clear();
+        }
+    }
+
     // --- Manejo de Entrada del Usuario (Teclado) ---
     /**
      * Maneja el evento cuando una tecla es presionada.
@@ -359,7 +706,8 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
                 break;
             case KeyEvent.VK_SPACE:
             case KeyEvent.VK_V:
-                sendActionToServer(MessageAction.SHOOT);
+                // Lo lleva el siguiente muestreo del timer: un comando extra movería la nave de más.
+                shootRequested = true;
                 break;
         }
     }
@@ -391,29 +739,48 @@ public class Cliente implements Runnable { // Runnable para el hilo de escucha d
 
     // --- Envío de Acciones al Servidor ---
     /**
-     * Envía una acción (MessageAction) al servidor.
+     * Envía un comando de entrada al servidor por TCP.
      * Debe ser seguro llamarlo desde el hilo de eventos de Swing (KeyListener).
-     * @param action La acción a enviar.
+     * @param command El comando a enviar.
      */
-    private void sendActionToServer(MessageAction action) {
+    private void sendCommandToServer(InputCommand command) {
         // Solo envía si estamos conectados y el stream de salida está listo.
         if (connected && outputStream != null) {
             try {
-                // Escribe la acción en el stream.
-                outputStream.writeObject(action);
-                outputStream.flush(); // Asegura que se envíe inmediatamente.
+                // Escribe el comando en el stream como trama MSG_COMMAND.
+                // Sincronizado con sendAck, que escribe desde el hilo de escucha.
+                synchronized (outputStream) {
+                    WireProtocol.writeCommandFrame(outputStream, command);
+                    outputStream.flush(); // Asegura que se envíe inmediatamente.
+                }
             } catch (SocketException se) {
                  // Error al enviar, probablemente desconectado.
-                 showError("Error al enviar acción (SocketException): " + se.getMessage() + ". Desconectando.");
+                 showError("Error al enviar comando (SocketException): " + se.getMessage() + ". Desconectando.");
                  disconnect();
             } catch (IOException e) {
                 // Otro error de I/O.
-                showError("Error de I/O al enviar acción: " + e.getMessage());
+                showError("Error de I/O al enviar comando: " + e.getMessage());
                 // Considerar desconectar si el error es persistente.
             }
         } else {
             // Informa si se intenta enviar sin estar conectado (puede pasar justo al desconectar).
-            // System.out.println("Cliente: Intento de enviar acción sin conexión.");
+            // System.out.println("Cliente: Intento de enviar comando sin conexión.");
+        }
+    }
+
+    /**
+     * Confirma al servidor el último snapshot aplicado, para que lo use como línea base.
+     * Se llama desde el hilo de escucha; comparte el stream con sendCommandToServer.
+     * @param tick Tick del snapshot aplicado.
+     * @throws IOException Si falla el envío.
+     */
+    private void sendAck(int tick) throws IOException {
+        DataOutputStream out = outputStream;
+        if (connected && out != null) {
+            synchronized (out) {
+                WireProtocol.writeAckFrame(out, tick);
+                out.flush();
+            }
         }
     }
 
@@ -0,0 +1,525 @@
+package com.dirac.spaceinvaders.core;
+
+import java.io.BufferedReader;                // Órdenes de administración por la entrada estándar
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;            // Direcciones de escucha y de los servidores de salas
+import java.nio.ByteBuffer;                   // Buffers de reenvío
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;            // Un solo hilo para todas las sesiones
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue; // Órdenes del operador hacia el reactor
+
+/**
+ * Clase Gateway: Proceso de entrada que reparte las sesiones de los clientes
+ * entre varios procesos {@link Servidor} (servidores de salas) por loopback.
+ *
+ * Cada proceso de salas es un dominio de fallo y de GC independiente; el
+ * gateway acepta los sockets en el puerto público y reenvía los bytes de cada
+ * sesión sin interpretarlos, en un único hilo con un Selector (como
+ * {@code NetworkServer}).
+ *
+ * Reparto:
+ * <ul>
+ *   <li>Cada sesión nueva va al servidor disponible con menos sesiones. El
+ *       gateway no elige sala: dentro de cada servidor, su {@link Lobby}
+ *       coloca al jugador en la primera sala con plaza libre.</li>
+ *   <li>Un servidor en drenaje no recibe sesiones nuevas; sus partidas siguen
+ *       hasta terminar y, cuando sus clientes vuelven a conectarse, entran en
+ *       otro servidor. El estado de una partida en curso no se migra.</li>
+ *   <li>Si un servidor no acepta la conexión, se aparta durante
+ *       {@link #BACKEND_RETRY_MS} y la sesión se coloca en otro.</li>
+ * </ul>
+ * Órdenes por la entrada estándar: {@code estado}, {@code drenar N}, {@code reanudar N}.
+ *
+ * Sólo se reenvía TCP: la oferta UDP de cada servidor apunta a su propio puerto,
+ * así que el transporte UDP sólo funciona si el cliente puede alcanzarlo
+ * directamente (por ejemplo, todo en localhost).
+ */
+public class Gateway implements Runnable {
+
+    // --- Constantes ---
+    private static final int BUFFER_BYTES = 16 * 1024;     // Buffer por sentido y sesión
+    private static final long BACKEND_RETRY_MS = 5000;     // Tiempo apartado tras un fallo de conexión
+
+    /**
+     * Servidor de salas al que se reenvían sesiones.
+     */
+    private static final class Backend {
+        final int index;
+        final InetSocketAddress address;
+        int sessions = 0;               // Sesiones abiertas (hilo del gateway)
+        volatile boolean draining = false;
+        long downUntil = 0;             // Apartado hasta este instante (System.currentTimeMillis())
+
+        Backend(int index, InetSocketAddress address) {
+            this.index = index;
+            this.address = address;
+        }
+
+        boolean isAvailable(long now) {
+            return !draining && now >= downUntil;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + address.getHostString() + ":" + address.getPort();
+        }
+    }
+
+    /**
+     * Sesión de un cliente: su socket, el del servidor de salas y un buffer por sentido.
+     * Los buffers se mantienen en modo escritura (posición = bytes pendientes).
+     */
+    private static final class Session {
+        final SocketChannel client;
+        final ByteBuffer toBackend = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final ByteBuffer toClient = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        SelectionKey clientKey;
+        SocketChannel backendChannel;
+        SelectionKey backendKey;
+        Backend backend;
+        boolean clientDone = false;   // El cliente cerró su sentido (EOF)
+        boolean backendDone = false;  // El servidor de salas cerró su sentido (EOF)
+        boolean closed = false;
+
+        Session(SocketChannel client) {
+            this.client = client;
+        }
+    }
+
+    // --- Configuración ---
+    private final int port;
+    private final List<Backend> backends = new ArrayList<>();
+
+    // --- Estado del Reactor (sólo su hilo) ---
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private long acceptedSessions = 0;
+    private final Queue<String> pendingCommands = new ConcurrentLinkedQueue<>(); // Órdenes para el reactor
+
+    /**
+     * @param port Puerto público.
+     * @param addresses Direcciones de los servidores de salas.
+     */
+    public Gateway(int port, List<InetSocketAddress> addresses) {
+        this.port = port;
+        for (InetSocketAddress address : addresses) {
+            backends.add(new Backend(backends.size(), address));
+        }
+    }
+
+    // --- Ciclo de Vida ---
+    /**
+     * Abre el puerto público.
+     * @throws IOException Si el puerto no se puede abrir.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        log("Gateway escuchando en el puerto " + port + ", servidores " + backends + ".");
+    }
+
+    /**
+     * Detiene el reactor; cierra todas las sesiones al salir del bucle.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Pasa una orden de administración al hilo del reactor (cualquier hilo).
+     * @param command Orden escrita por el operador.
+     */
+    public void submitCommand(String command) {
+        pendingCommands.offer(command);
+        selector.wakeup();
+    }
+
+    // --- Bucle del Reactor ---
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                String command;
+                while ((command = pendingCommands.poll()) != null) {
+                    runCommand(command);
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        acceptClient();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    try {
+                        handleKey(session, key);
+                    } catch (IOException e) {
+                        closeSession(session);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                log("Error en el reactor del gateway: " + e.getMessage());
+            }
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    private void handleKey(Session session, SelectionKey key) throws IOException {
+        if (session.closed) return;
+        if (key == session.backendKey && key.isConnectable()) {
+            finishBackendConnect(session);
+            return;
+        }
+        boolean fromClient = key == session.clientKey;
+        if (key.isReadable()) {
+            relay(session, fromClient); // Lo leído en este extremo va hacia el otro
+        }
+        if (!session.closed && key.isValid() && key.isWritable()) {
+            flush(session, !fromClient); // Escribible este extremo: se vacía lo que viene del otro
+        }
+    }
+
+    /**
+     * Lee lo disponible de un extremo y lo escribe en el otro.
+     * Si el otro extremo va por detrás y el buffer se llena, se deja de leer
+     * del primero hasta que haya sitio (contrapresión de TCP de punta a punta).
+     * Un EOF no cierra la sesión: sólo marca ese sentido como terminado (ver {@link #flush}).
+     * @param fromClient true para el sentido cliente -> servidor de salas.
+     */
+    private void relay(Session session, boolean fromClient) throws IOException {
+        SocketChannel from = fromClient ? session.client : session.backendChannel;
+        ByteBuffer buffer = fromClient ? session.toBackend : session.toClient;
+        if (from.read(buffer) < 0) {
+            if (fromClient) {
+                session.clientDone = true;
+            } else {
+                session.backendDone = true;
+            }
+        }
+        flush(session, fromClient);
+    }
+
+    /**
+     * Escribe lo pendiente de un sentido y ajusta el interés de ambos extremos.
+     * Si el origen ya cerró, se sigue escribiendo hasta vaciar el buffer (por ejemplo,
+     * la última trama del servidor antes de cerrar) y sólo entonces se cierra ese
+     * sentido en el destino (shutdownOutput). La sesión se cierra cuando los dos
+     * sentidos han terminado y no queda nada pendiente.
+     * @param fromClient true para el sentido cliente -> servidor de salas.
+     */
+    private void flush(Session session, boolean fromClient) throws IOException {
+        ByteBuffer buffer = fromClient ? session.toBackend : session.toClient;
+        SocketChannel to = fromClient ? session.backendChannel : session.client;
+        SelectionKey fromKey = fromClient ? session.clientKey : session.backendKey;
+        SelectionKey toKey = fromClient ? session.backendKey : session.clientKey;
+        boolean sourceDone = fromClient ? session.clientDone : session.backendDone;
+
+        buffer.flip();
+        to.write(buffer);
+        buffer.compact();
+        boolean pending = buffer.position() > 0;
+        setInterest(toKey, SelectionKey.OP_WRITE, pending);
+        setInterest(fromKey, SelectionKey.OP_READ, !sourceDone && buffer.hasRemaining());
+        if (!sourceDone || pending) return;
+
+        to.shutdownOutput(); // Medio cierre: el destino recibe EOF tras el último byte
+        if (session.clientDone && session.backendDone
+                && session.toBackend.position() == 0 && session.toClient.position() == 0) {
+            closeSession(session);
+        }
+    }
+
+    private static void setInterest(SelectionKey key, int op, boolean on) {
+        int ops = key.interestOps();
+        key.interestOps(on ? ops | op : ops & ~op);
+    }
+
+    // --- Colocación de Sesiones ---
+    /**
+     * Acepta un cliente y empieza a conectarlo con un servidor de salas.
+     * El socket del cliente no se lee hasta que el servidor acepta la conexión.
+     */
+    private void acceptClient() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); // Snapshots pequeños: sin esperas de Nagle
+            Session session = new Session(channel);
+            session.clientKey = channel.register(selector, 0, session);
+            acceptedSessions++;
+            connectToBackend(session);
+        } catch (IOException e) {
+            log("Error al aceptar conexión de cliente: " + e.getMessage());
+            if (channel != null) {
+                try { channel.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Elige servidor para la sesión e inicia la conexión no bloqueante.
+     * Si no queda ningún servidor disponible, se cierra la sesión.
+     */
+    private void connectToBackend(Session session) {
+        while (true) {
+            Backend backend = place();
+            if (backend == null) {
+                log("Sesión rechazada desde " + session.client.socket().getRemoteSocketAddress()
+                        + ": no hay servidores de salas disponibles.");
+                closeSession(session);
+                return;
+            }
+            session.backend = backend;
+            backend.sessions++;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                session.backendChannel = channel;
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                if (channel.connect(backend.address)) {
+                    session.backendKey = channel.register(selector, 0, session);
+                    backendConnected(session);
+                } else {
+                    session.backendKey = channel.register(selector, SelectionKey.OP_CONNECT, session);
+                }
+                return;
+            } catch (IOException e) {
+                backendFailed(session, e);
+            }
+        }
+    }
+
+    private void finishBackendConnect(Session session) {
+        try {
+            session.backendChannel.finishConnect();
+            backendConnected(session);
+        } catch (IOException e) {
+            backendFailed(session, e);
+            connectToBackend(session);
+        }
+    }
+
+    private void backendConnected(Session session) {
+        session.backendKey.interestOps(SelectionKey.OP_READ);
+        session.clientKey.interestOps(SelectionKey.OP_READ);
+        log("Cliente " + session.client.socket().getRemoteSocketAddress() + " -> servidor " + session.backend
+                + " (" + session.backend.sessions + " sesiones).");
+    }
+
+    /**
+     * Aparta un servidor que no acepta conexiones y deshace la colocación de la sesión.
+     */
+    private void backendFailed(Session session, IOException e) {
+        Backend backend = session.backend;
+        log("Servidor " + backend + " no disponible (" + e.getMessage() + "); apartado "
+                + BACKEND_RETRY_MS / 1000 + " s.");
+        backend.downUntil = System.currentTimeMillis() + BACKEND_RETRY_MS;
+        backend.sessions--;
+        if (session.backendKey != null) session.backendKey.cancel();
+        if (session.backendChannel != null) {
+            try { session.backendChannel.close(); } catch (IOException ignored) {}
+        }
+        session.backend = null;
+        session.backendChannel = null;
+        session.backendKey = null;
+    }
+
+    /**
+     * Servidor para la siguiente sesión: el disponible con menos sesiones abiertas.
+     * Qué sala le toca lo decide el {@link Lobby} de ese servidor, que llena
+     * primero las salas con plaza libre; el gateway no lo sabe ni lo intenta
+     * adivinar, porque las bajas cambian qué salas tienen hueco.
+     * @return El servidor elegido, o null si no hay ninguno disponible.
+     */
+    private Backend place() {
+        long now = System.currentTimeMillis();
+        Backend best = null;
+        for (Backend backend : backends) {
+            if (backend.isAvailable(now) && (best == null || backend.sessions < best.sessions)) {
+                best = backend;
+            }
+        }
+        return best;
+    }
+
+    private void closeSession(Session session) {
+        if (session.closed) return;
+        session.closed = true;
+        try { session.client.close(); } catch (IOException ignored) {}
+        if (session.backendChannel != null) {
+            try { session.backendChannel.close(); } catch (IOException ignored) {}
+        }
+        Backend backend = session.backend;
+        if (backend != null) {
+            backend.sessions--;
+            if (backend.draining && backend.sessions == 0) {
+                log("Servidor " + backend + " drenado: sin sesiones, puede detenerse.");
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Session) {
+                closeSession((Session) key.attachment());
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log("Error al cerrar el canal de escucha: " + e.getMessage());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log("Error al cerrar el selector: " + e.getMessage());
+        }
+    }
+
+    // --- Administración ---
+    /**
+     * Ejecuta una orden de administración (hilo del reactor).
+     */
+    private void runCommand(String command) {
+        String[] parts = command.trim().split("\\s+");
+        if (parts[0].equals("estado")) {
+            StringBuilder sb = new StringBuilder("Estado: " + acceptedSessions + " sesiones aceptadas.");
+            long now = System.currentTimeMillis();
+            for (Backend backend : backends) {
+                sb.append("\n  ").append(backend).append(": ").append(backend.sessions).append(" sesiones")
+                        .append(backend.draining ? ", drenando" : "")
+                        .append(now < backend.downUntil ? ", apartado" : "");
+            }
+            log(sb.toString());
+            return;
+        }
+        if (parts.length == 2 && (parts[0].equals("drenar") || parts[0].equals("reanudar"))) {
+            Backend backend = findBackend(parts[1]);
+            if (backend == null) {
+                log("Servidor desconocido: " + parts[1]);
+                return;
+            }
+            backend.draining = parts[0].equals("drenar");
+            if (backend.draining) {
+                log("Drenando servidor " + backend + ": " + backend.sessions + " sesiones hasta terminar.");
+                if (backend.sessions == 0) log("Servidor " + backend + " drenado: sin sesiones, puede detenerse.");
+            } else {
+                log("Servidor " + backend + " vuelve a recibir sesiones.");
+            }
+            return;
+        }
+        log("Orden desconocida: '" + command + "' (estado | drenar N | reanudar N)");
+    }
+
+    private Backend findBackend(String index) {
+        try {
+            int i = Integer.parseInt(index);
+            return i >= 0 && i < backends.size() ? backends.get(i) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // --- Utilidades ---
+    private static void log(String message) {
+        String timestamp = new java.text.SimpleDateFormat("HH:mm:ss").format(new java.util.Date());
+        System.out.println("[" + timestamp + "] " + message);
+    }
+
+    /**
+     * Convierte "host:puerto,host:puerto" en direcciones.
+     * @throws IllegalArgumentException Si alguna dirección no es válida.
+     */
+    private static List<InetSocketAddress> parseBackends(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String entry : list.split(",")) {
+            String trimmed = entry.trim();
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Servidor de salas inválido (host:puerto): " + trimmed);
+            }
+            try {
+                addresses.add(new InetSocketAddress(trimmed.substring(0, colon),
+                        Integer.parseInt(trimmed.substring(colon + 1))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Puerto inválido en " + trimmed);
+            }
+        }
+        return addresses;
+    }
+
+    // --- Punto de Entrada del Gateway ---
+    /**
+     * Argumentos: {@code --port=12345 --backends=127.0.0.1:12346,127.0.0.1:12347}.
+     */
+    public static void main(String[] args) {
+        int port = ServerConfig.DEFAULT_PORT;
+        List<InetSocketAddress> addresses = null;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--port=")) {
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--backends=")) {
+                    addresses = parseBackends(arg.substring("--backends=".length()));
+                } else {
+                    throw new IllegalArgumentException("Argumento desconocido: " + arg);
+                }
+            }
+            if (addresses == null || addresses.isEmpty()) {
+                throw new IllegalArgumentException("Falta --backends=host:puerto[,host:puerto...]");
+            }
+        } catch (IllegalArgumentException e) { // Incluye NumberFormatException
+            System.err.println("Configuración inválida: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        Gateway gateway = new Gateway(port, addresses);
+        try {
+            gateway.start();
+        } catch (IOException e) {
+            System.err.println("Error al iniciar el gateway en el puerto " + port + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Thread reactor = new Thread(gateway, "gateway-reactor");
+        reactor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::stop, "shutdown"));
+
+        // Órdenes del operador; si no hay entrada estándar, el gateway sigue igualmente.
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) gateway.submitCommand(line);
+            }
+        } catch (IOException e) {
+            log("Entrada de órdenes cerrada: " + e.getMessage());
+        }
+    }
+}
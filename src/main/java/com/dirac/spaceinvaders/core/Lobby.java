@@ -0,0 +1,118 @@
+package com.dirac.spaceinvaders.core;
+
+import com.dirac.spaceinvaders.net.WireProtocol; // Sala ANY_ROOM de los espectadores
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;     // Sala de cada jugador, leída desde el reactor sin locks
+import java.util.concurrent.CopyOnWriteArrayList;  // Salas abiertas: se recorren en cada tick, cambian poco
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Clase Lobby: Reparte los clientes que se conectan entre las salas del servidor.
+ *
+ * Un cliente nuevo entra en la primera sala abierta que tenga plazas libres y
+ * cuya partida no haya terminado; si no hay ninguna, se abre una sala nueva
+ * (hasta el máximo configurado). Cuando el último cliente de una sala se va, la
+ * sala se cierra y deja de programarse.
+ *
+ * Las altas y bajas se serializan con el lock del lobby (son poco frecuentes);
+ * la sala de cada jugador y la lista de salas se leen sin locks, porque las
+ * consultan el reactor con cada entrada y el planificador en cada tick.
+ */
+class Lobby {
+
+    // --- Configuración ---
+    private final ServerConfig config;
+    private final Executor executor;         // Pool compartido (snapshots de cada sala)
+    private final TickStats stats;
+    private final Consumer<String> logger;
+
+    // --- Salas ---
+    private final List<Partida> partidas = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Partida> partidaPorJugador = new ConcurrentHashMap<>();
+    private int nextPartidaId = 0; // Sólo con el lock del lobby
+
+    Lobby(ServerConfig config, Executor executor, TickStats stats, Consumer<String> logger) {
+        this.config = config;
+        this.executor = executor;
+        this.stats = stats;
+        this.logger = logger;
+    }
+
+    /**
+     * Reserva una plaza para un jugador, abriendo una sala si hace falta.
+     * @param playerId ID del jugador.
+     * @return La sala asignada, o null si todas están llenas y no se pueden abrir más.
+     */
+    synchronized Partida asignar(int playerId) {
+        Partida elegida = null;
+        for (Partida partida : partidas) {
+            if (partida.seats < config.getMaxPlayers() && !partida.isGameOver()) {
+                elegida = partida;
+                break;
+            }
+        }
+        if (elegida == null) {
+            if (partidas.size() >= config.getMaxRooms()) return null;
+            elegida = new Partida(nextPartidaId++, config, executor, stats, logger);
+            partidas.add(elegida);
+            logger.accept("Sala " + elegida.getId() + " abierta (" + partidas.size() + " salas activas).");
+        }
+        elegida.seats++;
+        partidaPorJugador.put(playerId, elegida);
+        return elegida;
+    }
+
+    /**
+     * Libera la plaza de un jugador y cierra su sala si se queda vacía.
+     * @param playerId ID del jugador.
+     * @return La sala en la que estaba, o null si no tenía.
+     */
+    synchronized Partida liberar(int playerId) {
+        Partida partida = partidaPorJugador.remove(playerId);
+        if (partida == null) return null;
+        if (--partida.seats == 0) {
+            partidas.remove(partida);
+            partida.close();
+        }
+        return partida;
+    }
+
+    /**
+     * Cierra todas las salas (al detener el servidor).
+     */
+    synchronized void cerrarTodas() {
+        for (Partida partida : partidas) {
+            partida.close();
+        }
+        partidas.clear();
+        partidaPorJugador.clear();
+    }
+
+    /**
+     * @param playerId ID del jugador.
+     * @return Su sala, o null si no está en ninguna.
+     */
+    Partida getPartida(int playerId) {
+        return partidaPorJugador.get(playerId);
+    }
+
+    /**
+     * @param partidaId Número de sala, o {@link WireProtocol#ANY_ROOM} para la primera abierta.
+     * @return La sala, o null si no está abierta.
+     */
+    Partida buscar(int partidaId) {
+        for (Partida partida : partidas) {
+            if (partidaId == WireProtocol.ANY_ROOM || partida.getId() == partidaId) return partida;
+        }
+        return null;
+    }
+
+    /**
+     * @return Las salas abiertas. Se recorre sin locks: cada iteración ve una instantánea.
+     */
+    List<Partida> getPartidas() {
+        return partidas;
+    }
+}
@@ -0,0 +1,1148 @@
+package com.dirac.spaceinvaders.core;
+
+import com.dirac.spaceinvaders.game.*; // Importa todas las clases del paquete game
+import com.dirac.spaceinvaders.net.ClientHandler; // Manejador de cliente
+import com.dirac.spaceinvaders.net.InputCommand;  // Botones del comando de entrada
+import com.dirac.spaceinvaders.net.Snapshot;        // Captura inmutable por tick
+import com.dirac.spaceinvaders.net.SnapshotBroadcaster; // Etapa de codificación y envío
+import com.dirac.spaceinvaders.net.SpectatorFeed;       // Flujo compartido de los espectadores
+
+import java.awt.Color;       // Colores de los jugadores
+import java.util.ArrayDeque;  // Cola de comandos de cada jugador
+import java.util.ArrayList;
+import java.util.Collections;  // Para crear listas sincronizadas
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;     // Para disparos aleatorios de aliens
+import java.util.Queue;      // Cola de eventos de red para el hilo de la sala
+import java.util.concurrent.ConcurrentLinkedQueue; // Cola sin locks (muchos productores, un consumidor)
+import java.util.concurrent.Executor;              // Pool compartido que ejecuta las salas
+import java.util.concurrent.atomic.AtomicBoolean;  // Una sola vuelta en curso por sala
+import java.util.function.Consumer;                // Log del servidor
+import java.util.function.Predicate; // Filtros de la rejilla de colisiones
+
+/**
+ * Clase Partida: Una sala de juego independiente. Contiene el estado de la
+ * simulación, la lógica de niveles y los clientes de una partida; el
+ * {@link Servidor} puede alojar muchas a la vez (ver {@link Lobby}).
+ *
+ * Una sala no tiene hilo propio: el planificador del servidor llama a
+ * {@link #schedule} una vez por tick y la sala ejecuta su vuelta
+ * ({@link #advance}) en un hilo del pool compartido. Como mucho hay una vuelta
+ * en curso por sala, así que el estado del juego sigue teniendo un único
+ * escritor en cada momento; el paso de una vuelta a la siguiente (quizá en otro
+ * hilo del pool) se ordena con el flag {@code scheduled}, que se libera al
+ * terminar la vuelta y se toma antes de lanzar la siguiente. En lo que sigue,
+ * "hilo de la sala" es el hilo del pool que ejecuta la vuelta actual.
+ */
+public class Partida {
+
+    // --- Constantes de la Partida ---
+    private static final int MAX_CATCH_UP_TICKS = 5; // Ticks seguidos para recuperar retraso; el resto se descarta
+    private static final int PREVIEW_RATE_HZ = 20;   // Capturas por segundo para la vista previa del servidor
+    private static final int SPECTATOR_KEYFRAME_SECONDS = 2; // Snapshot completo periódico del flujo de espectadores
+    private static final int ALIEN_MOVE_INTERVAL = 15; // El contador para mover aliens (más bajo = más rápido)
+    private static final int ALIEN_SHOOT_PROBABILITY = 5; // Probabilidad (en %) de que un alien dispare en un tick
+    private static final int ZIGZAG_DISTANCE = 120;      // distancia horizontal antes de invertir
+    private int zigzagDistanceCounter = 0;               // contador acumulado
+    private static final int MAX_LEVELS = 6; // Total number of levels
+    private static final int MAX_BOSS_MINIONS = 10; // Max small enemies spawned by boss
+    private static final int MAX_INBOX_EVENTS_PER_TICK = 4096; // Tope de eventos de red aplicados por tick
+    private static final int INPUT_BUFFER_TICKS = 2;  // Comandos en cola tolerados antes de aplicar dos por tick
+    private static final int MAX_QUEUED_INPUTS = 16;  // Cola de comandos por jugador; se descartan los más antiguos
+    private static final int MAX_REWIND_MS = 250;     // Retroceso máximo al resolver un disparo (compensación de latencia)
+    private static final int LEVEL_CLEARED_MS = 2000; // Pausa entre niveles
+    private static final int BOSS_INTRO_MS = 2000;    // Presentación del jefe
+    private List<Alien> bossMinions = new ArrayList<>();
+
+    // --- Detección de Colisiones ---
+    // Rejillas de la fase amplia (sólo hilo de la sala); se reconstruyen en cada tick.
+    private final SpatialGrid<Alien> alienGrid =
+            new SpatialGrid<>(GamePanel.ANCHO_JUEGO, GamePanel.ALTO_JUEGO, SpatialGrid.DEFAULT_CELL_SIZE);
+    private final SpatialGrid<Player> playerGrid =
+            new SpatialGrid<>(GamePanel.ANCHO_JUEGO, GamePanel.ALTO_JUEGO, SpatialGrid.DEFAULT_CELL_SIZE);
+    // Jugadores que pueden recibir daño (sin objetos nuevos por consulta).
+    private static final Predicate<Player> VULNERABLE_PLAYER =
+            p -> p.isActive() && !p.isInvulnerable();
+    // Listas de trabajo reutilizadas en cada tick: la detección no crea objetos en régimen estable.
+    private final List<Alien> collisionAliens = new ArrayList<>();
+    private final List<Player> collisionPlayers = new ArrayList<>();
+
+    // --- Identidad y Configuración ---
+    private final int id;                    // Número de sala (para el log y la GUI)
+    private final int tickRateHz;            // Frecuencia fija de la simulación
+    private final long tickNanos;
+    private final TickStats stats;           // Contadores compartidos del planificador
+    private final Consumer<String> logger;   // Log del servidor
+    int seats = 0;                           // Plazas ocupadas (sólo con el lock del Lobby)
+
+    // --- Clientes de la Sala ---
+    // Lista SINCRONIZADA con los manejadores de los clientes de esta sala.
+    private final List<ClientHandler> clientHandlers = Collections.synchronizedList(new ArrayList<>());
+
+    // --- Game Difficulty Parameters (will be set based on level) ---
+    private int currentAlienMoveInterval;
+    private int currentAlienShootProbability;
+    private int currentAlienSpeedMultiplier;
+
+    // --- Estado del Juego (sólo hilo de la sala) ---
+    private final GameState currentGameState = new GameState(); // El estado actual y autoritativo de la partida
+    private int alienMoveCounter = 0; // Contador para controlar la velocidad de movimiento alien
+    private DireccionAlien currentAlienDirection = DireccionAlien.DERECHA; // Dirección actual de los aliens
+    private FaseNivel faseNivel = FaseNivel.JUGANDO; // Fase del flujo del nivel
+    private int faseTicksRestantes = 0;              // Ticks que quedan en la fase actual
+    private Random random = new Random(); // Para decisiones aleatorias (disparos alien)
+    private boolean playersJoined = false; // Algún jugador entró en la partida
+    private int simulationTick = 0; // Ticks simulados; numera los snapshots (base de los deltas) y el historial
+    private final TargetHistory targetHistory; // Posiciones de los objetivos en los últimos ticks
+    private volatile boolean gameOver = false; // Copia publicada de isGameOver() para el Lobby
+
+    // --- Planificación ---
+    private final AtomicBoolean scheduled = new AtomicBoolean(false); // Hay una vuelta lanzada o en curso
+    private volatile boolean closed = false;
+    private long previousNanos = 0;   // Inicio de la vuelta anterior (0 = aún no ha corrido)
+    private long accumulator = 0;     // Tiempo pendiente de simular
+    private long seenBroadcastNanos = 0, seenBroadcastJobs = 0, seenSupersededJobs = 0;
+
+    // --- Etapa de Envío ---
+    private final SnapshotBroadcaster broadcaster; // Codifica y entrega snapshots en el pool compartido
+    private volatile boolean observed = false;     // La GUI muestra esta sala
+    private long nextPreviewNanos = 0;             // Próxima captura para la vista previa
+    private final SpectatorFeed spectators; // Espectadores: una trama compartida por vuelta
+    private final long spectatorIntervalNanos;     // Periodo del flujo de espectadores
+    private long nextSpectatorNanos = 0;
+    // Último snapshot publicado. Es inmutable, así que la GUI lo lee sin locks.
+    private volatile Snapshot latestSnapshot;
+
+    // --- Entrada desde la Red ---
+    // Cola MPSC sin locks con los cambios que llegan de la red: comandos de entrada,
+    // altas y bajas de jugadores. Los hilos de red sólo encolan; la sala la vacía
+    // al principio de cada tick, así que su estado tiene un único escritor.
+    private final Queue<Runnable> tickInbox = new ConcurrentLinkedQueue<>();
+    // Entrada vigente de cada jugador, por ID (sólo hilo de la sala).
+    private final Map<Integer, PlayerInput> playerInputs = new HashMap<>();
+
+    /**
+     * Comandos de un jugador pendientes de aplicar, en orden de tick del cliente.
+     */
+    private static final class PlayerInput {
+        final ArrayDeque<InputCommand> queued = new ArrayDeque<>();
+    }
+
+    // --- Constructor ---
+    /**
+     * Crea una sala con la partida en el nivel inicial de la configuración.
+     * El juego se inicializa en su primer tick, antes que cualquier alta de jugador.
+     * @param id Número de sala.
+     * @param config Configuración del servidor (nivel inicial y frecuencia).
+     * @param executor Pool compartido en el que se codifican los snapshots.
+     * @param stats Contadores compartidos del planificador.
+     * @param logger Log del servidor.
+     */
+    Partida(int id, ServerConfig config, Executor executor, TickStats stats, Consumer<String> logger) {
+        this.id = id;
+        this.tickRateHz = config.getTickRateHz();
+        this.tickNanos = 1_000_000_000L / tickRateHz;
+        this.stats = stats;
+        this.logger = logger;
+        this.spectatorIntervalNanos = 1_000_000_000L / config.getSpectatorRateHz();
+        this.spectators = new SpectatorFeed(tickRateHz);
+        this.targetHistory = new TargetHistory(ticksFor(MAX_REWIND_MS) + 1);
+        this.broadcaster = new SnapshotBroadcaster(executor, spectators,
+                config.getSpectatorRateHz() * SPECTATOR_KEYFRAME_SECONDS, tickRateHz);
+        int startLevel = config.getStartLevel();
+        tickInbox.offer(() -> initializeGame(startLevel));
+    }
+
+    // --- Altas, Bajas y Entradas (cualquier hilo) ---
+    /**
+     * Añade un cliente a la sala. El jugador entra en el juego al principio del siguiente tick.
+     * @param handler Manejador del cliente.
+     */
+    void join(ClientHandler handler) {
+        int playerId = handler.getPlayerId();
+        clientHandlers.add(handler);
+        tickInbox.offer(() -> addPlayerToGame(playerId));
+    }
+
+    /**
+     * Saca a un cliente de la sala; su jugador se elimina en el siguiente tick.
+     * @param handler Manejador del cliente.
+     * @return true si el cliente estaba en la sala.
+     */
+    boolean leave(ClientHandler handler) {
+        int playerId = handler.getPlayerId();
+        boolean removed = clientHandlers.remove(handler);
+        tickInbox.offer(() -> {
+            playerInputs.remove(playerId);
+            removePlayerFromGame(playerId);
+        });
+        return removed;
+    }
+
+    /**
+     * Encola un comando de entrada recibido por la red. No bloquea: puede llamarse
+     * desde el reactor sin esperar a que la sala termine su vuelta.
+     * @param playerId ID del jugador.
+     * @param clientTick Tick del cliente del comando (número de secuencia).
+     * @param buttons Máscara InputCommand.BUTTON_* del comando.
+     * @param viewTick Tick del snapshot que el cliente dibujaba.
+     */
+    void submitInput(int playerId, int clientTick, int buttons, int viewTick) {
+        InputCommand command = new InputCommand(clientTick, buttons, viewTick);
+        tickInbox.offer(() -> receiveInput(playerId, command));
+    }
+
+    /**
+     * Aplica, en el hilo de la sala, los eventos de red encolados desde el tick anterior.
+     * Como mucho MAX_INBOX_EVENTS_PER_TICK, para que una avalancha no alargue el tick.
+     */
+    private void drainTickInbox() {
+        Runnable event;
+        int applied = 0;
+        while (applied < MAX_INBOX_EVENTS_PER_TICK && (event = tickInbox.poll()) != null) {
+            event.run();
+            applied++;
+        }
+    }
+
+    /**
+     * Encola un comando de entrada (hilo de la sala). Si el jugador acumula demasiados
+     * (un cliente acelerado o una ráfaga tras un corte), se pierden los más antiguos;
+     * el cliente lo corrige al reconciliar con el siguiente snapshot.
+     */
+    private void receiveInput(int playerId, InputCommand command) {
+        PlayerInput input = playerInputs.get(playerId);
+        if (input == null) return; // El jugador ya no está en la partida
+        if (input.queued.size() >= MAX_QUEUED_INPUTS) {
+            input.queued.poll();
+        }
+        input.queued.offer(command);
+    }
+
+    // --- Vuelta de la Sala (Hilo del Pool) ---
+    /**
+     * Lanza la siguiente vuelta de la sala en el pool, salvo que la anterior siga
+     * en curso (entonces se cuenta y la sala recupera el retraso con su acumulador).
+     * Llamado por el planificador del servidor una vez por tick.
+     * @param workers Pool compartido de hilos.
+     */
+    void schedule(Executor workers) {
+        if (closed) return;
+        if (!scheduled.compareAndSet(false, true)) {
+            stats.skippedPasses.increment();
+            return;
+        }
+        workers.execute(this::advance);
+    }
+
+    /**
+     * Una vuelta de la sala: simula con paso fijo (1 / tickRateHz) los ticks que
+     * le correspondan según su acumulador sobre System.nanoTime(). Si la sala se
+     * retrasa, se ejecutan varios ticks seguidos para recuperar (hasta
+     * MAX_CATCH_UP_TICKS) en lugar de ralentizar el juego; si el retraso es mayor,
+     * se descarta y se cuenta. El snapshot se publica una vez por vuelta, tras los
+     * ticks simulados; la codificación y la entrega las hace {@link SnapshotBroadcaster}.
+     */
+    private void advance() {
+        try {
+            if (closed) return;
+            long now = System.nanoTime();
+            if (previousNanos == 0) {
+                accumulator = tickNanos; // El primer tick se ejecuta sin esperar
+            } else {
+                accumulator += now - previousNanos;
+            }
+            previousNanos = now;
+
+            final double tickSeconds = 1.0 / tickRateHz;
+            int steps = 0;
+            while (accumulator >= tickNanos && steps < MAX_CATCH_UP_TICKS) {
+                long tickStart = System.nanoTime();
+                simulateTick(tickSeconds);
+                accumulator -= tickNanos;
+                if (steps > 0) stats.lateTicks.increment();
+                steps++;
+                long tickElapsed = System.nanoTime() - tickStart;
+                stats.simulationNanos.add(tickElapsed);
+                if (tickElapsed > tickNanos) stats.overruns.increment();
+            }
+            stats.ticks.add(steps);
+            if (accumulator >= tickNanos) {
+                // Límite de recuperación alcanzado: se descarta el retraso en vez de acumularlo sin fin.
+                stats.droppedTicks.add(accumulator / tickNanos);
+                accumulator %= tickNanos;
+            }
+            if (steps > 0) {
+                gameOver = currentGameState.isGameOver();
+                publishState();
+            }
+            collectBroadcastStats();
+        } catch (RuntimeException e) {
+            log("Error en la vuelta de la sala: " + e);
+        } finally {
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * Ejecuta un tick de simulación de duración fija. Sin locks: sólo el hilo
+     * de la sala toca las entidades vivas (la red entra por tickInbox y los
+     * lectores usan el snapshot publicado).
+     * @param deltaTime Duración del paso (en segundos).
+     */
+    private void simulateTick(double deltaTime) {
+        simulationTick++;
+        drainTickInbox();
+        applyInputCommands();
+        if (!currentGameState.isGameOver()) {
+            updateLevelPhase(deltaTime);
+        }
+        targetHistory.record(simulationTick, currentGameState.getAliens(), currentGameState.getBoss());
+    }
+
+    /**
+     * Publica el estado tras los ticks de esta vuelta como un {@link Snapshot}
+     * inmutable (arrays primitivos copiados una sola vez) y lo pasa a la etapa
+     * de envío para los clientes a los que les toca según su frecuencia. La vista previa
+     * de la GUI lee el mismo snapshot a través de {@link #latestSnapshot}, así
+     * que nadie fuera del hilo de la sala toca las entidades vivas. Los
+     * espectadores, si hay, reciben el mismo snapshot a su propia frecuencia.
+     * Si no le toca a nadie, ni siquiera se captura el snapshot.
+     */
+    private void publishState() {
+        long now = System.nanoTime();
+        long slackNanos = tickNanos / 2; // Medio tick: los envíos caen en límites de tick
+        List<ClientHandler> dueHandlers = null; // Lista nueva por trabajo: pasa a ser de la etapa de envío
+        synchronized (clientHandlers) {
+            for (ClientHandler handler : clientHandlers) {
+                if (handler.isRunning() && handler.isSnapshotDue(now, slackNanos)) {
+                    if (dueHandlers == null) dueHandlers = new ArrayList<>(clientHandlers.size());
+                    dueHandlers.add(handler);
+                }
+            }
+        }
+        boolean refreshPreview = observed && now + slackNanos - nextPreviewNanos >= 0;
+        boolean spectate = spectators.hasViewers() && now + slackNanos - nextSpectatorNanos >= 0;
+        if (dueHandlers == null && !refreshPreview && !spectate) return;
+
+        if (refreshPreview) {
+            nextPreviewNanos = now + 1_000_000_000L / PREVIEW_RATE_HZ;
+        }
+        if (spectate) {
+            nextSpectatorNanos = now + spectatorIntervalNanos;
+        }
+        // Los snapshots se numeran por tick de simulación: el cliente convierte ticks a tiempo
+        // al interpolar y los devuelve en sus comandos para la compensación de latencia.
+        Snapshot snapshot = Snapshot.capture(currentGameState, simulationTick);
+        latestSnapshot = snapshot;
+        if (dueHandlers != null || spectate) {
+            broadcaster.submit(snapshot, dueHandlers != null ? dueHandlers : Collections.<ClientHandler>emptyList(), spectate);
+        }
+        stats.captureNanos.add(System.nanoTime() - now);
+        stats.captures.increment();
+    }
+
+    /**
+     * Pasa a los contadores compartidos lo que ha medido la etapa de envío de esta sala.
+     */
+    private void collectBroadcastStats() {
+        long busy = broadcaster.getBusyNanos();
+        long jobs = broadcaster.getProcessedJobs();
+        long superseded = broadcaster.getSupersededJobs();
+        stats.broadcastNanos.add(busy - seenBroadcastNanos);
+        stats.broadcastJobs.add(jobs - seenBroadcastJobs);
+        stats.supersededJobs.add(superseded - seenSupersededJobs);
+        seenBroadcastNanos = busy;
+        seenBroadcastJobs = jobs;
+        seenSupersededJobs = superseded;
+    }
+
+    /**
+     * Convierte una duración en ticks de simulación a la frecuencia actual.
+     * @param millis Duración en milisegundos.
+     * @return Número de ticks (al menos 1).
+     */
+    private int ticksFor(int millis) {
+        return Math.max(1, millis * tickRateHz / 1000);
+    }
+
+    /**
+     * Avanza un tick la máquina de estados del nivel. Ninguna fase bloquea:
+     * las pausas se cuentan en ticks, así que el bucle sigue enviando
+     * snapshots y aplicando entradas durante las transiciones.
+     * @param deltaTime Tiempo desde el tick anterior (en segundos).
+     */
+    private void updateLevelPhase(double deltaTime) {
+        switch (faseNivel) {
+            case JUGANDO:
+                updateGameLogic(deltaTime);
+                checkCollisions();
+                currentGameState.removeInactiveObjects(); // This also removes inactive boss minions from GameState's list
+                removeInactiveBossMinionsFromServerList(); // Keep server-side list sync
+                checkGameOver();
+                checkLevelComplete();
+                break;
+            case NIVEL_COMPLETADO:
+                updateBulletsOnly();
+                if (--faseTicksRestantes <= 0) {
+                    enterLevelPhase(FaseNivel.GENERANDO, 0);
+                }
+                break;
+            case GENERANDO:
+                advanceToNextLevel();
+                if (currentGameState.isGameOver()) {
+                    enterLevelPhase(FaseNivel.JUGANDO, 0); // Último nivel superado: fin del juego
+                } else {
+                    enterPlayPhase();
+                }
+                break;
+            case INTRO_JEFE:
+                updateBulletsOnly();
+                if (--faseTicksRestantes <= 0) {
+                    currentGameState.setStatusMessage("Nivel " + currentGameState.getLevel());
+                    enterLevelPhase(FaseNivel.JUGANDO, 0);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Cambia de fase del nivel.
+     * @param fase Nueva fase.
+     * @param ticks Duración de la fase en ticks (0 si no tiene duración fija).
+     */
+    private void enterLevelPhase(FaseNivel fase, int ticks) {
+        faseNivel = fase;
+        faseTicksRestantes = ticks;
+    }
+
+    /**
+     * Empieza a jugar el nivel actual, pasando antes por la presentación si es el del jefe.
+     */
+    private void enterPlayPhase() {
+        if (currentGameState.getLevel() == MAX_LEVELS && currentGameState.getBoss() != null) {
+            currentGameState.setStatusMessage("¡Se acerca la Nodriza!");
+            enterLevelPhase(FaseNivel.INTRO_JEFE, ticksFor(BOSS_INTRO_MS));
+        } else {
+            enterLevelPhase(FaseNivel.JUGANDO, 0);
+        }
+    }
+
+    /**
+     * Durante las pausas sólo se mueven las balas que quedan en pantalla (y las
+     * que disparen los jugadores), sin colisiones ni lógica de enemigos.
+     */
+    private void updateBulletsOnly() {
+        currentGameState.getBulletStore().moveAll(0, GamePanel.ALTO_JUEGO + 20);
+        currentGameState.removeInactiveObjects();
+    }
+
+    private void removeInactiveBossMinionsFromServerList() {
+        bossMinions.removeIf(minion -> !minion.isActive());
+    }
+
+    // --- Lógica del Juego (Ejecutada en el Hilo de la Sala) ---
+
+    /**
+     * Inicializa o resetea el estado del juego para el primer nivel (o un nuevo juego).
+     */
+    private void initializeGame(int startLevel) { // Added startLevel parameter
+        currentGameState.getPlayers().clear();
+        currentGameState.getAliens().clear();
+        currentGameState.getBulletStore().clear();
+        currentGameState.setBoss(null); // Clear any previous boss
+        currentGameState.setScores(new HashMap<>());
+        currentGameState.setLevel(startLevel); // Use the selected start level
+        currentGameState.setGameOver(false);
+        currentGameState.setStatusMessage("Nivel " + startLevel);
+
+        // Set difficulty for the starting level
+        setDifficultyForLevel(startLevel);
+
+        currentAlienDirection = DireccionAlien.DERECHA;
+        alienMoveCounter = 0;
+        zigzagDistanceCounter = 0;
+        playerInputs.clear();
+        playersJoined = false;
+
+        respawnAllPlayers();
+        spawnEntitiesForLevel(startLevel); // Changed from spawnAliensForLevel
+        enterPlayPhase();
+        log("Juego inicializado para el Nivel " + startLevel + ".");
+    }
+
+
+    private void setDifficultyForLevel(int level) {
+        log("Configurando dificultad para Nivel " + level);
+        if (level == 1) {
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL - 2; // 13
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY + 2; // 7
+            currentAlienSpeedMultiplier = 1;
+        } else if (level == 2) {
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL - 4; // 11
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY + 4; // 9
+            currentAlienSpeedMultiplier = 2;
+        } else if (level == 3) {
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL - 6; // 9
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY + 6; // 11
+            currentAlienSpeedMultiplier = 3;
+        } else if (level == 4) { // Slower than level 3 trend
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL - 3; // 12 (L3 was 9) - Slower movement pace
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY + 5; // 10 (L3 was 11) - Slightly less shooting
+            currentAlienSpeedMultiplier = 2; // (L3 was 3) - Slower individual alien speed
+        } else if (level == 5) { // Slightly harder than L4, but still managed
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL - 5; // 10 (L4 was 12, L3 was 9)
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY + 7; // 12 (L4 was 10, L3 was 11)
+            currentAlienSpeedMultiplier = 3; // (L4 was 2, L3 was 3)
+        } else if (level == MAX_LEVELS) { // Level 6 - Boss Level
+            // Boss parameters are self-contained in Boss.java, reset alien params to default
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL;
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY;
+            currentAlienSpeedMultiplier = 1;
+            bossMinions.clear(); // Clear any previous boss minions
+        } else {
+            currentAlienMoveInterval = ALIEN_MOVE_INTERVAL;
+            currentAlienShootProbability = ALIEN_SHOOT_PROBABILITY;
+            currentAlienSpeedMultiplier = 1;
+        }
+        log("Dificultad Nivel " + level + ": MoveInterval=" + currentAlienMoveInterval +
+            ", ShootProb=" + currentAlienShootProbability + "%, SpeedMult=" + currentAlienSpeedMultiplier);
+    }
+
+
+    /**
+     * Prepara el juego para el siguiente nivel.
+     * Limpia balas, regenera aliens, incrementa dificultad.
+     */
+    private void advanceToNextLevel() {
+        int currentLevel = currentGameState.getLevel();
+        if (currentLevel == MAX_LEVELS && (currentGameState.getBoss() == null || !currentGameState.getBoss().isActive())) {
+             currentGameState.setGameOver(true);
+             currentGameState.setStatusMessage("¡HAS GANADO! Fin del Juego.");
+             log("Juego completado. Todos los niveles superados.");
+             return;
+        }
+
+        int nextLevel = currentLevel + 1;
+        if (nextLevel > MAX_LEVELS) { // Should be caught by above, but as a safeguard
+             currentGameState.setGameOver(true);
+             currentGameState.setStatusMessage("¡HAS GANADO! Fin del Juego.");
+             log("Juego completado. Todos los niveles superados.");
+             return;
+        }
+
+        currentGameState.setLevel(nextLevel);
+        currentGameState.getBulletStore().clear();
+        currentGameState.getAliens().clear(); // Clear traditional aliens
+        currentGameState.setBoss(null);       // Clear boss before spawning new level entities
+        currentGameState.setGameOver(false);
+        currentGameState.setStatusMessage("Nivel " + nextLevel);
+
+        setDifficultyForLevel(nextLevel); // Set difficulty for the new level
+
+        currentAlienDirection = DireccionAlien.DERECHA;
+        alienMoveCounter = 0;
+        zigzagDistanceCounter = 0;
+
+        respawnAllPlayers();
+        spawnEntitiesForLevel(nextLevel); // Changed from spawnAliensForLevel
+        log("Avanzando al Nivel " + currentGameState.getLevel());
+    }
+
+
+    /**
+     * Genera la formación de aliens para un nivel específico.
+     * @param level El nivel para el cual generar aliens.
+     */
+    private void spawnEntitiesForLevel(int level) {
+        currentGameState.getAliens().clear(); // Clear all aliens first
+        currentGameState.getFormation().clear();
+        bossMinions.clear();                  // Clear the server-side list of boss minions
+        currentGameState.setBoss(null);
+
+        if (level >= 1 && level <= 5) {
+            // ... (your existing alien spawning logic for levels 1-5)
+            // Make sure this adds to currentGameState.getAliens()
+            int numRows = 3 + (level / 2) ;
+            if (numRows > 5) numRows = 5;
+            int numCols = 8 + (level -1);
+            if (numCols > 12) numCols = 12;
+
+            int startX = 50;
+            int startY = 50;
+            int spacingX = Alien.ALIEN_WIDTH + 15 - (level);
+            if (spacingX < Alien.ALIEN_WIDTH + 5) spacingX = Alien.ALIEN_WIDTH + 5;
+            int spacingY = Alien.ALIEN_HEIGHT + 10;
+
+            // Each alien's position is derived from its slot plus the shared formation offset
+            AlienFormation formation = currentGameState.getFormation();
+            formation.reset(startX, startY, numCols, numRows, spacingX, spacingY);
+            for (int row = 0; row < numRows; row++) {
+                for (int col = 0; col < numCols; col++) {
+                    int tipo;
+                    if (row % 3 == 0) tipo = Alien.TIPO_PEQUENO;
+                    else if (row % 3 == 1) tipo = Alien.TIPO_MEDIANO;
+                    else tipo = Alien.TIPO_GRANDE;
+                    currentGameState.getAliens().add(formation.spawn(col, row, tipo));
+                }
+            }
+            log("Generados " + currentGameState.getAliens().size() + " aliens para el Nivel " + level);
+
+
+        } else if (level == MAX_LEVELS) {
+            int bossX = GamePanel.ANCHO_JUEGO / 2 - Boss.BOSS_WIDTH / 2;
+            int bossY = 60;
+            Boss boss = new Boss(bossX, bossY);
+            currentGameState.setBoss(boss);
+            log("Jefe final (Nodriza) generado para el Nivel " + level + " con " + boss.getMaxHealth() + " HP.");
+        }
+    }
+
+     /**
+      * Recoloca a todos los jugadores conectados en su posición inicial.
+      * Útil al empezar un nivel o reiniciar.
+      */
+     private void respawnAllPlayers() {
+         int playerSpacing = GamePanel.ANCHO_JUEGO / (currentGameState.getPlayers().size() + 1);
+         int currentX = playerSpacing;
+         int playerY = GamePanel.ALTO_JUEGO - Player.PLAYER_HEIGHT - 30; // Cerca del fondo
+
+         for (Player player : currentGameState.getPlayers()) {
+             player.setX(currentX - Player.PLAYER_WIDTH / 2);
+             player.setY(playerY);
+             // Podríamos resetear más cosas del jugador si fuera necesario (ej. vidas)
+             currentX += playerSpacing;
+         }
+     }
+
+
+    /**
+     * Añade un nuevo jugador al estado del juego cuando se conecta.
+     * @param playerId El ID del nuevo jugador.
+     */
+    private void addPlayerToGame(int playerId) {
+         playersJoined = true;
+         // Asigna colores distintos a los primeros jugadores
+         Color playerColor;
+         switch (playerId % 4) { // Modulo 4 para ciclar colores si hay más de 4
+             case 0: playerColor = Color.BLUE; break;
+             case 1: playerColor = Color.RED; break;
+             case 2: playerColor = Color.MAGENTA; break;
+             case 3: playerColor = Color.ORANGE; break;
+             default: playerColor = Color.WHITE;
+         }
+
+        // Calcula posición inicial (distribuida)
+        int numPlayers = currentGameState.getPlayers().size() + 1; // +1 por el que se está añadiendo
+        int playerSpacing = GamePanel.ANCHO_JUEGO / (numPlayers + 1);
+        int playerX = playerSpacing * numPlayers - Player.PLAYER_WIDTH / 2;
+        int playerY = GamePanel.ALTO_JUEGO - Player.PLAYER_HEIGHT - 30; // Posición Y fija cerca del fondo
+
+        Player newPlayer = new Player(playerX, playerY, playerId, playerColor);
+        playerInputs.put(playerId, new PlayerInput());
+
+        currentGameState.getPlayers().add(newPlayer);
+        // Inicializa la puntuación para el nuevo jugador
+        if (currentGameState.getScores() == null) {
+             currentGameState.setScores(new HashMap<>());
+        }
+        currentGameState.getScores().put(playerId, 0);
+         // Ajusta las posiciones de los jugadores ya existentes para hacer espacio
+         respawnAllPlayers();
+         log("Jugador " + playerId + " añadido al juego.");
+    }
+
+    /**
+     * Aplica un comando de cada jugador por tick, en el orden en que los muestreó
+     * el cliente: cada comando mueve la nave exactamente un paso, igual que lo
+     * predice el cliente, y el servidor anota su tick para que el cliente reconcilie.
+     * Si la cola crece más de INPUT_BUFFER_TICKS (el reloj del cliente adelanta al
+     * del servidor, o llegó una ráfaga), se aplica uno extra para no acumular latencia.
+     * Sin comandos en cola la nave no se mueve. Se llama en cada tick tras vaciar
+     * la cola de eventos de red.
+     */
+    private void applyInputCommands() {
+        boolean gameOver = currentGameState.isGameOver();
+        for (Map.Entry<Integer, PlayerInput> entry : playerInputs.entrySet()) {
+            ArrayDeque<InputCommand> queued = entry.getValue().queued;
+            if (queued.isEmpty()) continue;
+            Player player = getPlayerById(entry.getKey());
+            int steps = queued.size() > INPUT_BUFFER_TICKS ? 2 : 1;
+            for (int i = 0; i < steps; i++) {
+                InputCommand command = queued.poll();
+                // Si el juego ha terminado o no se encuentra al jugador, el comando se consume sin efecto.
+                if (gameOver || player == null) continue;
+                applyInputCommand(player, command);
+                player.setLastInputTick(command.getClientTick());
+            }
+        }
+    }
+
+    /**
+     * Realiza sobre un jugador lo que indica su máscara de botones. El movimiento
+     * es {@link Player#step}, el mismo que predice el cliente.
+     * @param player Jugador a mover.
+     * @param command Comando del jugador.
+     */
+    private void applyInputCommand(Player player, InputCommand command) {
+        int buttons = command.getButtons();
+        player.step((buttons & InputCommand.BUTTON_LEFT) != 0, (buttons & InputCommand.BUTTON_RIGHT) != 0,
+                (buttons & InputCommand.BUTTON_UP) != 0, (buttons & InputCommand.BUTTON_DOWN) != 0);
+        // Una nave destruida no dispara (sigue en la lista de jugadores, pero inactiva).
+        if ((buttons & InputCommand.BUTTON_SHOOT) != 0 && player.isActive()) {
+            // Creamos siempre una nueva bala sin restricción de una sola activa
+            int bulletX = player.getX() + player.getWidth() / 2 - Bullet.BULLET_WIDTH / 2;
+            int bulletY = player.getY() - Bullet.BULLET_HEIGHT;
+            fireCompensated(player.getPlayerId(), bulletX, bulletY, command.getViewTick());
+        }
+    }
+
+    /**
+     * Dispara una bala como si hubiera salido en el tick que el jugador estaba viendo.
+     * La posición de la nave ya es la que él veía (se predice en el cliente); los
+     * objetivos, en cambio, los veía en el pasado. Por eso la bala avanza un paso por
+     * cada tick transcurrido desde entonces, comprobando los objetivos en las posiciones
+     * que tenían en ese tick ({@link TargetHistory}). Si acierta a algo que sigue vivo,
+     * el impacto se resuelve ya; si no, la bala aparece donde estaría ahora.
+     * El retroceso se limita a MAX_REWIND_MS, para que un enlace muy lento no
+     * dispare demasiado en el pasado. Fuera de la fase JUGANDO no hay colisiones
+     * (presentación del jefe, pausa entre niveles): la bala sale sin retroceso.
+     * @param shooterId ID del jugador que dispara.
+     * @param bulletX X inicial de la bala.
+     * @param bulletY Y inicial de la bala.
+     * @param viewTick Tick del snapshot que el cliente dibujaba (-1 si ninguno).
+     */
+    private void fireCompensated(int shooterId, int bulletX, int bulletY, int viewTick) {
+        // Ticks ya cerrados desde el que veía el jugador; este tick lo simula la bala con normalidad.
+        int rewind = viewTick < 0 || faseNivel != FaseNivel.JUGANDO
+                ? 0 : Math.max(0, Math.min(simulationTick - 1 - viewTick, targetHistory.capacity() - 1));
+        int y = bulletY;
+        Boss boss = currentGameState.getBoss();
+        boolean bossTargetable = currentGameState.getLevel() == MAX_LEVELS && boss != null && boss.isActive();
+        for (int tick = simulationTick - rewind; tick < simulationTick; tick++) {
+            y += Bullet.PLAYER_BULLET_SPEED;
+            if (y < 0) return; // Habría salido de la pantalla sin acertar
+            if (!targetHistory.has(tick)) continue;
+            Alien alien = targetHistory.findAlien(tick, bulletX, y, Bullet.BULLET_WIDTH, Bullet.BULLET_HEIGHT);
+            if (alien != null) {
+                resolveAlienHit(alien, shooterId);
+                return;
+            }
+            if (bossTargetable && targetHistory.hitsBoss(tick, boss, bulletX, y, Bullet.BULLET_WIDTH, Bullet.BULLET_HEIGHT)) {
+                resolveBossHit(boss, shooterId);
+                return;
+            }
+        }
+        currentGameState.getBulletStore().spawn(bulletX, y, shooterId);
+    }
+
+    /**
+     * Actualiza la lógica principal del juego (movimiento de aliens, balas, etc.).
+     * Llamado repetidamente desde la vuelta de la sala (advance).
+     * @param deltaTime Tiempo transcurrido desde la última actualización (en segundos), no usado aquí pero útil para física más compleja.
+     */
+    /**
+     * Actualiza la lógica principal del juego (movimiento de aliens, balas, etc.).
+     * Llamado repetidamente desde la vuelta de la sala (advance).
+     * @param deltaTime Tiempo transcurrido desde la última actualización (en segundos).
+     */
+    private void updateGameLogic(double deltaTime) {
+        // --- Mover Balas --- (un solo recorrido sobre los arrays del BulletStore)
+        currentGameState.getBulletStore().moveAll(0, GamePanel.ALTO_JUEGO + 20); // Added margin below
+
+        // --- Logic for Levels 1-5 (Traditional Aliens) --- (existing logic using difficulty parameters)
+        if (currentGameState.getLevel() < MAX_LEVELS && !currentGameState.getAliens().isEmpty()) {
+            // ... (Your existing alien movement and shooting logic for levels 1-5)
+            // Make sure it uses currentAlienMoveInterval, currentAlienSpeedMultiplier, currentAlienShootProbability
+            // This part seems okay from the previous response.
+             alienMoveCounter++;
+            AlienFormation formation = currentGameState.getFormation();
+            // Live formation size is tracked incrementally by the formation itself
+            int moveInterval = Math.max(1, currentAlienMoveInterval - formation.getLiveCount() / 4);
+
+            if (alienMoveCounter >= moveInterval && !formation.isEmpty()) {
+                alienMoveCounter = 0;
+                int dx = (currentAlienDirection == DireccionAlien.DERECHA)
+                        ? currentAlienSpeedMultiplier * 2
+                        : -currentAlienSpeedMultiplier * 2;
+
+                boolean useZigZag = (currentGameState.getLevel() == 3 || currentGameState.getLevel() == 5) ; // Example for levels 3 & 5 for variety
+
+                if (useZigZag) {
+                    // ... (Zigzag logic for traditional aliens if you want to keep it)
+                    // This example uses a simplified version of your previous zigzag
+                    int speedH_std_alien = currentAlienSpeedMultiplier * 2;
+                    int speedV_std_alien = currentAlienSpeedMultiplier; // Simpler vertical component
+                    dx = (currentAlienDirection == DireccionAlien.DERECHA) ? speedH_std_alien : -speedH_std_alien;
+
+                    int dy = speedV_std_alien; // Slight diagonal movement
+                    zigzagDistanceCounter += Math.abs(dx);
+                    if (zigzagDistanceCounter >= ZIGZAG_DISTANCE) {
+                        currentAlienDirection = (currentAlienDirection == DireccionAlien.DERECHA)
+                                ? DireccionAlien.IZQUIERDA
+                                : DireccionAlien.DERECHA;
+                        zigzagDistanceCounter = 0;
+                        dy += Alien.ALIEN_DROP_DISTANCE; // Whole formation descends on dir change
+                    }
+                    formation.translate(dx, dy);
+                } else { // Original movement
+                    // Edge test on the live bounding box instead of every alien
+                    if (formation.getLeftEdge() + dx <= 0 || formation.getRightEdge() + dx >= GamePanel.ANCHO_JUEGO) {
+                        currentAlienDirection = (currentAlienDirection == DireccionAlien.DERECHA)
+                                ? DireccionAlien.IZQUIERDA
+                                : DireccionAlien.DERECHA;
+                        formation.translate(0, Alien.ALIEN_DROP_DISTANCE);
+                    } else {
+                        formation.translate(dx, 0);
+                    }
+                }
+            }
+            // --- Disparo Aleatorio de Aliens (traditional) ---
+            if (random.nextInt(100) < currentAlienShootProbability) {
+                // Live non-minion aliens are exactly the formation's live members
+                Alien shooter = currentGameState.getFormation().randomLiveMember(random);
+                if (shooter != null) {
+                    // ... (rest of your canShoot logic for traditional aliens)
+                    currentGameState.getBulletStore().spawn(shooter.getX() + shooter.getWidth()/2 - Bullet.BULLET_WIDTH/2, shooter.getY() + shooter.getHeight(), -1);
+                }
+            }
+        }
+        
+        // --- Update Boss Minions Movement (if any) ---
+        // Boss minions could have simpler movement logic, e.g., move downwards or towards players
+        for (Alien minion : bossMinions) {
+            if (minion.isActive()) {
+                minion.setY(minion.getY() + 2); // Simple downward movement for minions
+                if (minion.getY() > GamePanel.ALTO_JUEGO) {
+                    minion.setActive(false);
+                }
+                // Minions could also shoot
+                if (random.nextInt(100) < 5) { // Minions have low shoot probability
+                    currentGameState.getBulletStore().spawn(minion.getX() + minion.getWidth()/2 - Bullet.BULLET_WIDTH/2, minion.getY() + minion.getHeight(), -1);
+                }
+            }
+        }
+
+
+        // --- Logic for Level 6 (Boss) ---
+        Boss boss = currentGameState.getBoss();
+        if (currentGameState.getLevel() == MAX_LEVELS && boss != null && boss.isActive()) {
+            boss.updateState(bossMinions, MAX_BOSS_MINIONS); // Pass minion list for context if needed by Boss
+
+            if (boss.canShoot()) {
+                boss.shoot(currentGameState.getBulletStore());
+            }
+
+            if (boss.canSpawnMinion() && bossMinions.size() < MAX_BOSS_MINIONS) {
+                List<Alien> newMinions = boss.spawnMinions();
+                for (Alien minion : newMinions) {
+                    if (bossMinions.size() < MAX_BOSS_MINIONS) {
+                        currentGameState.getAliens().add(minion); // Add to global alien list for drawing & collision
+                        bossMinions.add(minion); // Add to server's tracking list for boss minions
+                    } else {
+                        break; // Reached max minion cap
+                    }
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * Comprueba todas las posibles colisiones entre objetos del juego.
+     * Llamado repetidamente desde la vuelta de la sala (advance).
+     */
+    private void checkCollisions() {
+        // --- Colisiones: Bala de Jugador vs Alien (includes boss minions if they are in getAliens()) ---
+        // Las balas se recorren por índice sobre el BulletStore; el resto, sobre
+        // copias de trabajo reutilizadas (los jugadores pueden eliminarse durante el recorrido).
+        BulletStore bullets = currentGameState.getBulletStore();
+        int bulletCount = bullets.size(); // Las balas de este tick no cambian de índice hasta removeInactive
+        List<Alien> allAliensCopy = collisionAliens; // Includes traditional and boss minions
+        allAliensCopy.clear();
+        allAliensCopy.addAll(currentGameState.getAliens());
+        List<Player> playersCopy = collisionPlayers;
+        playersCopy.clear();
+        playersCopy.addAll(currentGameState.getPlayers());
+
+        // --- Fase amplia: rejillas de aliens y jugadores, reconstruidas en cada tick ---
+        // Cada prueba sólo compara contra los objetos de las celdas cercanas.
+        alienGrid.clear();
+        for (int i = 0; i < allAliensCopy.size(); i++) {
+            Alien alien = allAliensCopy.get(i);
+            if (alien.isActive()) alienGrid.insert(alien);
+        }
+        playerGrid.clear();
+        for (int i = 0; i < playersCopy.size(); i++) {
+            Player player = playersCopy.get(i);
+            if (player.isActive()) playerGrid.insert(player);
+        }
+
+        for (int i = 0; i < bulletCount; i++) {
+            if (!bullets.isActive(i) || !bullets.isPlayerBullet(i)) continue;
+            // Bullet hits only one alien: the first one in list order, as before
+            Alien alien = alienGrid.findFirst(bullets.getX(i), bullets.getY(i),
+                    Bullet.BULLET_WIDTH, Bullet.BULLET_HEIGHT, GameObject::isActive);
+            if (alien != null) {
+                bullets.deactivate(i);
+                resolveAlienHit(alien, bullets.getOwnerId(i));
+            }
+        }
+        
+        // --- Colisiones: Bala de Jugador vs Boss --- (existing logic from previous response)
+        Boss boss = currentGameState.getBoss();
+        if (currentGameState.getLevel() == MAX_LEVELS && boss != null && boss.isActive()) {
+            for (int i = 0; i < bulletCount; i++) {
+                if (!boss.isActive()) break; // Only the killing bullet counts; the rest keep flying
+                if (!bullets.isActive(i) || !bullets.isPlayerBullet(i)) continue; // Check if bullet is still active
+                if (boss.intersects(bullets.getX(i), bullets.getY(i), Bullet.BULLET_WIDTH, Bullet.BULLET_HEIGHT)) {
+                    bullets.deactivate(i);
+                    resolveBossHit(boss, bullets.getOwnerId(i));
+                }
+            }
+        }
+
+        // --- Colisiones: Bala de Alien/Minion/Boss vs Jugador --- (existing logic)
+        for (int i = 0; i < bulletCount; i++) {
+            if (!bullets.isActive(i) || bullets.isPlayerBullet(i)) continue;
+            Player player = playerGrid.findFirst(bullets.getX(i), bullets.getY(i),
+                    Bullet.BULLET_WIDTH, Bullet.BULLET_HEIGHT, VULNERABLE_PLAYER);
+            if (player != null) {
+                bullets.deactivate(i);
+                player.loseLife();
+                log("Jugador " + player.getPlayerId() + " impactado. Vidas restantes: " + player.getLives());
+                if (player.getLives() > 0) {
+                    respawnSinglePlayer(player);
+                } else {
+                    removePlayerFromGame(player.getPlayerId());
+                    log("Jugador " + player.getPlayerId() + " ha perdido todas sus vidas.");
+                }
+            }
+        }
+        
+        // --- Colisiones: Alien (incl. minions) vs Jugador --- (existing logic)
+        for (int i = 0; i < allAliensCopy.size(); i++) { // allAliensCopy includes minions
+            Alien alien = allAliensCopy.get(i);
+            if(alien.isActive()){
+                // Alien hits one player, or player hits one alien (depending on perspective)
+                Player player = playerGrid.findFirst(alien, VULNERABLE_PLAYER);
+                if (player != null) {
+                    // Alien does not die, player loses life
+                    player.loseLife();
+                    log("Jugador " + player.getPlayerId() + " colisionó con alien. Vidas restantes: " + player.getLives());
+                    if(player.getLives() > 0) {
+                        respawnSinglePlayer(player);
+                    } else {
+                        removePlayerFromGame(player.getPlayerId());
+                         log("Jugador " + player.getPlayerId() + " eliminado por colisión con alien.");
+                    }
+                    // Potentially deactivate alien too, or push player back
+                    // For now, only player is affected as per classic Space Invaders style
+                }
+            }
+        }
+        
+        // --- Colisiones: Boss vs Jugador --- (existing logic)
+         if (currentGameState.getLevel() == MAX_LEVELS && boss != null && boss.isActive()) {
+            for (int i = 0; i < playersCopy.size(); i++) {
+                Player player = playersCopy.get(i);
+                if (player.isActive() && !player.isInvulnerable() && boss.collidesWith(player)) {
+                    player.loseLife(); // Boss collision is serious
+                    player.loseLife(); // Lose 2 lives for example
+                    log("Jugador " + player.getPlayerId() + " colisionó con el JEFE!");
+                     if (player.getLives() > 0) {
+                        respawnSinglePlayer(player);
+                    } else {
+                        removePlayerFromGame(player.getPlayerId());
+                        log("Jugador " + player.getPlayerId() + " eliminado por el Jefe.");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Destruye un alien alcanzado por una bala de jugador y le da los puntos al tirador.
+     * @param alien Alien alcanzado.
+     * @param shooterId ID del jugador que disparó.
+     */
+    private void resolveAlienHit(Alien alien, int shooterId) {
+        alien.setActive(false); // Marks for removal by removeInactiveObjects
+        currentGameState.getFormation().memberDestroyed(alien); // Shrinks the live bounds if needed
+        // Score logic...
+        Player shooter = getPlayerById(shooterId);
+        if (shooter != null) {
+            int points = alien.getPuntos(); // Standard points
+            if(alien.isBossMinion()) points = 50; // More points for boss minions
+            addScoreToPlayer(shooter.getPlayerId(), points);
+        }
+    }
+
+    /**
+     * Aplica al jefe el impacto de una bala de jugador.
+     * @param boss Jefe alcanzado (activo).
+     * @param shooterId ID del jugador que disparó.
+     */
+    private void resolveBossHit(Boss boss, int shooterId) {
+        if (!boss.isInSpecialAttackMode()) { // Boss might be invulnerable during special
+            boss.takeDamage(15); // Example damage, can be weapon dependent
+            log("Boss fue golpeado! Salud restante: " + boss.getCurrentHealth() + "/" + boss.getMaxHealth());
+        }
+        Player shooter = getPlayerById(shooterId);
+        if (shooter != null) {
+            addScoreToPlayer(shooter.getPlayerId(), 75); // Score for hitting boss
+        }
+        if (!boss.isActive()) {
+            log("Boss DERROTADO!");
+            if (shooter != null) addScoreToPlayer(shooter.getPlayerId(), 5000); // Big bonus
+        }
+    }
+
+    private Player getPlayerById(int playerId) {
+        for (Player p : currentGameState.getPlayers()) {
+            if (p.getPlayerId() == playerId) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    // Helper to add score (you might have this in a more complex way)
+    private void addScoreToPlayer(int playerId, int points) {
+        if (currentGameState.getScores() != null) {
+            currentGameState.getScores().merge(playerId, points, Integer::sum);
+        }
+    }
+    
+    // Helper to remove player (consolidates logic)
+    private void removePlayerFromGame(int playerId){
+        currentGameState.getPlayers().removeIf(p -> p.getPlayerId() == playerId);
+        if (currentGameState.getScores() != null) {
+            currentGameState.getScores().remove(playerId);
+        }
+    }
+
+    /**
+     * Comprueba si se cumplen las condiciones para terminar el juego.
+     * Llamado repetidamente desde la vuelta de la sala (advance).
+     */
+
+    /** Nuevo método en Partida para recolocar solo a un jugador */
+    private void respawnSinglePlayer(Player player) {
+        // Misma lógica de respawnAllPlayers pero solo para este jugador:
+        // Calcular posición inicial en base a su playerId y número de jugadores
+        int numPlayers = currentGameState.getPlayers().size();
+        int index = 0;
+        for (int i = 0; i < currentGameState.getPlayers().size(); i++) {
+            if (currentGameState.getPlayers().get(i).getPlayerId() == player.getPlayerId()) {
+                index = i + 1; // 1-based
+                break;
+            }
+        }
+        int spacing = GamePanel.ANCHO_JUEGO / (numPlayers + 1);
+        int newX = spacing * index - Player.PLAYER_WIDTH / 2;
+        int newY = GamePanel.ALTO_JUEGO - Player.PLAYER_HEIGHT - 30;
+        player.setX(newX);
+        player.setY(newY);
+    }
+    
+    
+    private void checkGameOver() {
+        // Existing: Aliens reach bottom (for levels 1-5)
+        if (currentGameState.getLevel() < MAX_LEVELS) {
+            int bottomLimit = GamePanel.ALTO_JUEGO - Alien.ALIEN_HEIGHT - 60; // Give a bit more room
+            AlienFormation formation = currentGameState.getFormation();
+            if (!formation.isEmpty() && formation.getBottomEdge() >= bottomLimit) { // Bottom of the lowest live row
+                currentGameState.setGameOver(true);
+                currentGameState.setStatusMessage("GAME OVER - ¡Los aliens invadieron!");
+                log("Game Over: Aliens alcanzaron la línea de defensa.");
+                return;
+            }
+        }
+
+        // Existing: No players left
+        // (Your existing logic for this is fine)
+        // nextPlayerId lo incrementa el reactor antes de que el alta llegue a este hilo: no sirve aquí.
+        if (currentGameState.getPlayers().isEmpty() && playersJoined) { // if players were ever in game
+             currentGameState.setGameOver(true);
+             currentGameState.setStatusMessage("GAME OVER - Todos los jugadores eliminados");
+             log("Game Over: No quedan jugadores activos.");
+        }
+    }
+
+    /**
+     * Comprueba si todos los aliens han sido eliminados para pasar al siguiente nivel.
+     * Llamado repetidamente desde la vuelta de la sala (advance).
+     */
+    private void checkLevelComplete() {
+        if (currentGameState.isGameOver()) return;
+
+        boolean levelBeaten = false;
+        int currentLevel = currentGameState.getLevel();
+
+        if (currentLevel >= 1 && currentLevel <= 5) { // Traditional alien levels
+            boolean aliensRemain = false;
+            for (Alien alien : currentGameState.getAliens()) {
+                if (alien.isActive()) {
+                    aliensRemain = true;
+                    break;
+                }
+            }
+            if (!aliensRemain && !currentGameState.getAliens().isEmpty()) { // Check if aliens list was populated for this level
+                levelBeaten = true;
+            } else if (!aliensRemain && currentGameState.getAliens().isEmpty() && currentGameState.getStatusMessage().startsWith("Nivel")){
+                // This can happen if spawnEntitiesForLevel was called but no aliens were added (e.g. level 6 start)
+                // Only consider level beaten if there were aliens meant to be there or it's the boss level
+                if(currentLevel < MAX_LEVELS) levelBeaten = true; // Assume if list is empty and it's not boss level, it was cleared
+            }
+
+
+        } else if (currentLevel == MAX_LEVELS) { // Boss Level
+            Boss boss = currentGameState.getBoss();
+            if (boss != null && !boss.isActive()) { // Boss defeated
+                levelBeaten = true;
+            }
+        }
+
+        if (levelBeaten) {
+            log("Nivel " + currentLevel + " completado!");
+            // Pausa sin bloquear: advanceToNextLevel() se ejecuta al terminar la fase
+            currentGameState.setStatusMessage("¡Nivel " + currentLevel + " completado!");
+            enterLevelPhase(FaseNivel.NIVEL_COMPLETADO, ticksFor(LEVEL_CLEARED_MS));
+        }
+    }
+
+    // --- Ciclo de Vida ---
+    /**
+     * Cierra la sala: deja de programarse y descarta los envíos pendientes.
+     * Una vuelta ya en curso termina sin efecto visible para los clientes.
+     */
+    void close() {
+        closed = true;
+        broadcaster.stop();
+        log("Sala cerrada.");
+    }
+
+    // --- Utilidades ---
+    private void log(String message) {
+        logger.accept("[Sala " + id + "] " + message);
+    }
+
+    // --- Getters y Setters ---
+    public int getId() { return id; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean isClosed() { return closed; }
+    public Snapshot getLatestSnapshot() { return latestSnapshot; }
+    public SpectatorFeed getSpectatorFeed() { return spectators; }
+    public void setObserved(boolean observed) { this.observed = observed; }
+
+    /**
+     * @return Número de clientes conectados a la sala.
+     */
+    public int getClientCount() {
+        return clientHandlers.size();
+    }
+}
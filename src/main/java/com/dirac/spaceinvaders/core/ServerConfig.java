@@ -0,0 +1,201 @@
+package com.dirac.spaceinvaders.core;
+
+import java.io.FileInputStream; // Lectura del fichero de propiedades
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;    // Formato clave=valor del fichero de configuración
+
+/**
+ * Clase ServerConfig: Parámetros de arranque del servidor.
+ *
+ * Se leen de un fichero de propiedades opcional y de la línea de comandos
+ * (los argumentos tienen prioridad sobre el fichero):
+ * <pre>
+ *   --config=servidor.properties   Fichero con las claves de abajo
+ *   --port=12345                   port
+ *   --level=1                      level        (nivel inicial, 1-6)
+ *   --tick-rate=20                 tickRate     (Hz de la simulación)
+ *   --max-players=4                maxPlayers   (por sala)
+ *   --max-rooms=256                maxRooms     (salas simultáneas)
+ *   --workers=N                    workers      (hilos del pool; por defecto, uno por núcleo)
+ *   --spectator-port=12346         spectatorPort (puerto de espectadores; 0 = desactivado)
+ *   --spectator-rate=10            spectatorRate (snapshots por segundo a los espectadores)
+ *   --headless                     headless     (true: sin GUI)
+ * </pre>
+ */
+public class ServerConfig {
+
+    // --- Valores por defecto ---
+    public static final int DEFAULT_PORT = 12345;
+    public static final int DEFAULT_LEVEL = 1;
+    public static final int DEFAULT_TICK_RATE_HZ = 20;
+    public static final int DEFAULT_MAX_PLAYERS = 4;
+    public static final int DEFAULT_MAX_ROOMS = 256;
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_SPECTATOR_RATE_HZ = 10;
+    public static final int MAX_LEVEL = 6;
+
+    // --- Atributos ---
+    private int port = DEFAULT_PORT;
+    private int startLevel = DEFAULT_LEVEL;
+    private int tickRateHz = DEFAULT_TICK_RATE_HZ;
+    private int maxPlayers = DEFAULT_MAX_PLAYERS;
+    private int maxRooms = DEFAULT_MAX_ROOMS;
+    private int workers = DEFAULT_WORKERS;
+    private int spectatorPort = 0;
+    private int spectatorRateHz = DEFAULT_SPECTATOR_RATE_HZ;
+    private boolean headless = false;
+
+    /**
+     * Construye la configuración a partir de los argumentos del programa.
+     * @param args Argumentos de main().
+     * @return La configuración validada.
+     * @throws IllegalArgumentException Si algún valor no es válido.
+     * @throws IOException Si no se puede leer el fichero de configuración.
+     */
+    public static ServerConfig fromArgs(String[] args) throws IOException {
+        Properties props = new Properties();
+        // Primero el fichero, para que los argumentos puedan sobrescribirlo.
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                try (InputStream in = new FileInputStream(arg.substring("--config=".length()))) {
+                    props.load(in);
+                }
+            }
+        }
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                props.setProperty("headless", "true");
+            } else if (arg.startsWith("--port=")) {
+                props.setProperty("port", arg.substring("--port=".length()));
+            } else if (arg.startsWith("--level=")) {
+                props.setProperty("level", arg.substring("--level=".length()));
+            } else if (arg.startsWith("--tick-rate=")) {
+                props.setProperty("tickRate", arg.substring("--tick-rate=".length()));
+            } else if (arg.startsWith("--max-players=")) {
+                props.setProperty("maxPlayers", arg.substring("--max-players=".length()));
+            } else if (arg.startsWith("--max-rooms=")) {
+                props.setProperty("maxRooms", arg.substring("--max-rooms=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                props.setProperty("workers", arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--spectator-port=")) {
+                props.setProperty("spectatorPort", arg.substring("--spectator-port=".length()));
+            } else if (arg.startsWith("--spectator-rate=")) {
+                props.setProperty("spectatorRate", arg.substring("--spectator-rate=".length()));
+            } else if (!arg.startsWith("--config=")) {
+                throw new IllegalArgumentException("Argumento desconocido: " + arg);
+            }
+        }
+        return fromProperties(props);
+    }
+
+    /**
+     * Construye la configuración a partir de un conjunto de propiedades.
+     * @param props Propiedades (las que falten toman el valor por defecto).
+     * @return La configuración validada.
+     * @throws IllegalArgumentException Si algún valor no es válido.
+     */
+    public static ServerConfig fromProperties(Properties props) {
+        ServerConfig config = new ServerConfig();
+        config.setPort(intProperty(props, "port", DEFAULT_PORT));
+        config.setStartLevel(intProperty(props, "level", DEFAULT_LEVEL));
+        config.setTickRateHz(intProperty(props, "tickRate", DEFAULT_TICK_RATE_HZ));
+        config.setMaxPlayers(intProperty(props, "maxPlayers", DEFAULT_MAX_PLAYERS));
+        config.setMaxRooms(intProperty(props, "maxRooms", DEFAULT_MAX_ROOMS));
+        config.setWorkers(intProperty(props, "workers", DEFAULT_WORKERS));
+        config.setSpectatorPort(intProperty(props, "spectatorPort", 0));
+        config.setSpectatorRateHz(intProperty(props, "spectatorRate", DEFAULT_SPECTATOR_RATE_HZ));
+        config.headless = Boolean.parseBoolean(props.getProperty("headless", "false").trim());
+        return config;
+    }
+
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no numérico para " + key + ": " + value);
+        }
+    }
+
+    // --- Setters (validan el rango) ---
+    public void setPort(int port) {
+        if (port < 1024 || port > 65535) {
+            throw new IllegalArgumentException("Puerto inválido: " + port + " (1024-65535)");
+        }
+        this.port = port;
+    }
+
+    public void setStartLevel(int startLevel) {
+        if (startLevel < 1 || startLevel > MAX_LEVEL) {
+            throw new IllegalArgumentException("Nivel inicial inválido: " + startLevel + " (1-" + MAX_LEVEL + ")");
+        }
+        this.startLevel = startLevel;
+    }
+
+    public void setTickRateHz(int tickRateHz) {
+        if (tickRateHz < 1 || tickRateHz > 1000) {
+            throw new IllegalArgumentException("Frecuencia de tick inválida: " + tickRateHz + " Hz");
+        }
+        this.tickRateHz = tickRateHz;
+    }
+
+    public void setMaxPlayers(int maxPlayers) {
+        if (maxPlayers < 1) {
+            throw new IllegalArgumentException("Número máximo de jugadores inválido: " + maxPlayers);
+        }
+        this.maxPlayers = maxPlayers;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        if (maxRooms < 1) {
+            throw new IllegalArgumentException("Número máximo de salas inválido: " + maxRooms);
+        }
+        this.maxRooms = maxRooms;
+    }
+
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Número de hilos del pool inválido: " + workers);
+        }
+        this.workers = workers;
+    }
+
+    public void setSpectatorPort(int spectatorPort) {
+        if (spectatorPort != 0 && (spectatorPort < 1024 || spectatorPort > 65535)) {
+            throw new IllegalArgumentException("Puerto de espectadores inválido: " + spectatorPort + " (0 o 1024-65535)");
+        }
+        this.spectatorPort = spectatorPort;
+    }
+
+    public void setSpectatorRateHz(int spectatorRateHz) {
+        if (spectatorRateHz < 1 || spectatorRateHz > 60) {
+            throw new IllegalArgumentException("Frecuencia de espectadores inválida: " + spectatorRateHz + " Hz (1-60)");
+        }
+        this.spectatorRateHz = spectatorRateHz;
+    }
+
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    // --- Getters ---
+    public int getPort() { return port; }
+    public int getStartLevel() { return startLevel; }
+    public int getTickRateHz() { return tickRateHz; }
+    public int getMaxPlayers() { return maxPlayers; }
+    public int getMaxRooms() { return maxRooms; }
+    public int getWorkers() { return workers; }
+    public int getSpectatorPort() { return spectatorPort; }
+    public int getSpectatorRateHz() { return spectatorRateHz; }
+    public boolean isHeadless() { return headless; }
+
+    @Override
+    public String toString() {
+        return "puerto " + port + ", nivel inicial " + startLevel + ", " + tickRateHz + " Hz, máx. "
+                + maxPlayers + " jugadores/sala, máx. " + maxRooms + " salas, " + workers + " hilos"
+                + (spectatorPort != 0 ? ", espectadores en " + spectatorPort + " a " + spectatorRateHz + " Hz" : "")
+                + (headless ? ", sin GUI" : "");
+    }
+}
@@ -0,0 +1,156 @@
+package com.dirac.spaceinvaders.core;
+
+import com.dirac.spaceinvaders.net.SnapshotCodec;   // Detección de snapshots completos
+import com.dirac.spaceinvaders.net.SpectatorFeed;   // Reparto a los espectadores conectados
+import com.dirac.spaceinvaders.net.SpectatorServer; // Puerto de espectadores del relé
+import com.dirac.spaceinvaders.net.WireProtocol;    // Tramas del protocolo
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;          // Conexión con el servidor (o relé) de origen
+import java.nio.ByteBuffer;
+
+/**
+ * Clase SpectatorRelay: Nodo de reenvío para espectadores.
+ *
+ * Se conecta como espectador a un servidor (o a otro relé) y reparte los mismos
+ * bytes a sus propios espectadores, sin decodificar ni volver a codificar nada:
+ * el servidor de juego sólo ve un espectador por relé, y los relés se pueden
+ * encadenar en árbol para retransmisiones con muchos espectadores.
+ *
+ * Los espectadores que se conectan a un relé empiezan a ver la partida en el
+ * siguiente snapshot completo periódico del flujo (el relé no puede pedirlos).
+ *
+ * Argumentos: {@code --upstream=host:puerto --port=12347 [--sala=N]}.
+ */
+public class SpectatorRelay {
+
+    // --- Constantes ---
+    private static final int RECONNECT_DELAY_MS = 2000; // Espera antes de reconectar con el origen
+
+    // --- Atributos ---
+    private final String upstreamHost;
+    private final int upstreamPort;
+    private final int roomId;
+    private final SpectatorFeed feed = new SpectatorFeed(0);
+    private long relayedFrames = 0;
+
+    /**
+     * @param upstreamHost Host del servidor o relé de origen.
+     * @param upstreamPort Su puerto de espectadores.
+     * @param roomId Sala a retransmitir, o {@link WireProtocol#ANY_ROOM}.
+     */
+    public SpectatorRelay(String upstreamHost, int upstreamPort, int roomId) {
+        this.upstreamHost = upstreamHost;
+        this.upstreamPort = upstreamPort;
+        this.roomId = roomId;
+    }
+
+    public SpectatorFeed getFeed() {
+        return feed;
+    }
+
+    /**
+     * Recibe el flujo del origen y lo reenvía; si se corta, reconecta.
+     * Los espectadores conectados siguen esperando el siguiente snapshot completo.
+     */
+    public void runForever() {
+        while (true) {
+            try (Socket socket = new Socket(upstreamHost, upstreamPort)) {
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                WireProtocol.writeSpectateFrame(out, roomId);
+                out.flush();
+                WireProtocol.Frame idFrame = WireProtocol.readFrame(in);
+                if (idFrame.getType() != WireProtocol.MSG_ID) {
+                    throw new IOException("Respuesta inesperada del origen: tipo " + idFrame.getType());
+                }
+                WireProtocol.parseIdPayload(idFrame.getPayload()); // Comprueba la versión del protocolo
+                feed.setTickRateHz(WireProtocol.parseIdTickRate(idFrame.getPayload()));
+                log("Conectado al origen " + upstreamHost + ":" + upstreamPort + " (sala " + roomId + ").");
+                feed.resync(); // Los deltas anteriores a la reconexión ya no sirven de base
+                relay(in);
+            } catch (IOException e) {
+                log("Origen no disponible (" + (e.getMessage() != null ? e.getMessage() : "conexión cerrada") + "); reintento en " + RECONNECT_DELAY_MS + " ms.");
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reenvía cada snapshot tal cual: la trama se construye una vez y se comparte.
+     */
+    private void relay(DataInputStream in) throws IOException {
+        while (true) {
+            WireProtocol.Frame frame = WireProtocol.readFrame(in);
+            if (frame.getType() != WireProtocol.MSG_SNAPSHOT) continue;
+            byte[] payload = frame.getPayload();
+            boolean keyframe = SnapshotCodec.isFullSnapshot(ByteBuffer.wrap(payload));
+            feed.publish(WireProtocol.encodeFrame(WireProtocol.MSG_SNAPSHOT, payload, payload.length), keyframe);
+            if (++relayedFrames % 600 == 0) {
+                log(relayedFrames + " tramas reenviadas; " + feed.getViewerCount() + " espectadores, "
+                        + feed.getSkippedFrames() + " tramas perdidas por espectadores lentos.");
+            }
+        }
+    }
+
+    private static void log(String message) {
+        String timestamp = new java.text.SimpleDateFormat("HH:mm:ss").format(new java.util.Date());
+        System.out.println("[" + timestamp + "] " + message);
+    }
+
+    // --- Punto de Entrada del Relé ---
+    public static void main(String[] args) {
+        String upstream = null;
+        int port = 0;
+        int roomId = WireProtocol.ANY_ROOM;
+        String host;
+        int upstreamPort;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--upstream=")) {
+                    upstream = arg.substring("--upstream=".length());
+                } else if (arg.startsWith("--port=")) {
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--sala=")) {
+                    roomId = Integer.parseInt(arg.substring("--sala=".length()));
+                } else {
+                    throw new IllegalArgumentException("Argumento desconocido: " + arg);
+                }
+            }
+            if (upstream == null || port == 0) {
+                throw new IllegalArgumentException("Uso: --upstream=host:puerto --port=N [--sala=N]");
+            }
+            int colon = upstream.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Origen inválido (host:puerto): " + upstream);
+            host = upstream.substring(0, colon);
+            upstreamPort = Integer.parseInt(upstream.substring(colon + 1));
+        } catch (IllegalArgumentException e) { // Incluye NumberFormatException
+            System.err.println("Configuración inválida: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        SpectatorRelay relay = new SpectatorRelay(host, upstreamPort, roomId);
+        // El relé sólo retransmite una sala: cualquier petición recibe ese flujo.
+        SpectatorServer server = new SpectatorServer(port, requested -> relay.getFeed());
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Error al abrir el puerto de espectadores " + port + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        log("Relé de espectadores en el puerto " + port + ", origen " + upstream + ".");
+        relay.runForever();
+    }
+}
@@ -0,0 +1,124 @@
+package com.dirac.spaceinvaders.core;
+
+import com.dirac.spaceinvaders.game.Alien; // Objetivos de los disparos
+import com.dirac.spaceinvaders.game.Boss;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clase TargetHistory: Posiciones de los objetivos (aliens y jefe) en los
+ * últimos ticks de una sala, para la compensación de latencia.
+ *
+ * El cliente ve a los aliens un poco en el pasado (latencia más el retardo de
+ * interpolación). Cuando llega un disparo, la sala recorre la trayectoria de
+ * la bala desde el tick que el jugador veía comprobando las posiciones que
+ * tenían entonces los objetivos. Sólo se guardan los ticks de la ventana de
+ * retroceso, en arrays reutilizados: grabar un tick no crea objetos.
+ *
+ * Sólo la usa el hilo de la sala.
+ */
+final class TargetHistory {
+
+    /**
+     * Objetivos de un tick: referencias a los aliens vivos y sus posiciones entonces.
+     */
+    private static final class Frame {
+        int tick = -1;
+        Alien[] aliens = new Alien[64];
+        int[] xs = new int[64];
+        int[] ys = new int[64];
+        int alienCount;
+        boolean bossActive;
+        int bossX, bossY;
+    }
+
+    private final Frame[] ring;
+
+    /**
+     * @param ticks Ticks que se conservan (ventana máxima de retroceso).
+     */
+    TargetHistory(int ticks) {
+        ring = new Frame[ticks];
+        for (int i = 0; i < ticks; i++) {
+            ring[i] = new Frame();
+        }
+    }
+
+    /**
+     * Ticks que abarca el historial.
+     */
+    int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Guarda las posiciones de los objetivos al final de un tick.
+     * @param tick Tick de simulación.
+     * @param aliens Aliens de la partida (incluidos los esbirros del jefe).
+     * @param boss Jefe, o null si no hay.
+     */
+    void record(int tick, List<Alien> aliens, Boss boss) {
+        Frame frame = ring[Math.floorMod(tick, ring.length)];
+        frame.tick = tick;
+        if (frame.aliens.length < aliens.size()) {
+            int capacity = Math.max(aliens.size(), frame.aliens.length * 2);
+            frame.aliens = Arrays.copyOf(frame.aliens, capacity);
+            frame.xs = Arrays.copyOf(frame.xs, capacity);
+            frame.ys = Arrays.copyOf(frame.ys, capacity);
+        }
+        int n = 0;
+        for (int i = 0; i < aliens.size(); i++) {
+            Alien alien = aliens.get(i);
+            if (!alien.isActive()) continue;
+            frame.aliens[n] = alien;
+            frame.xs[n] = alien.getX();
+            frame.ys[n] = alien.getY();
+            n++;
+        }
+        Arrays.fill(frame.aliens, n, frame.alienCount > n ? frame.alienCount : n, null); // Suelta los que ya no están
+        frame.alienCount = n;
+        frame.bossActive = boss != null && boss.isActive();
+        if (frame.bossActive) {
+            frame.bossX = boss.getX();
+            frame.bossY = boss.getY();
+        }
+    }
+
+    /**
+     * Indica si el historial conserva un tick.
+     */
+    boolean has(int tick) {
+        return ring[Math.floorMod(tick, ring.length)].tick == tick;
+    }
+
+    /**
+     * Primer alien que, en el tick indicado, ocupaba el rectángulo de la bala y sigue vivo ahora.
+     * @param tick Tick conservado (ver {@link #has}).
+     * @return El alien alcanzado, o null.
+     */
+    Alien findAlien(int tick, int x, int y, int width, int height) {
+        Frame frame = ring[Math.floorMod(tick, ring.length)];
+        for (int i = 0; i < frame.alienCount; i++) {
+            Alien alien = frame.aliens[i];
+            if (!alien.isActive()) continue; // Destruido desde entonces
+            if (overlaps(frame.xs[i], frame.ys[i], alien.getWidth(), alien.getHeight(), x, y, width, height)) {
+                return alien;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indica si, en el tick indicado, el jefe ocupaba el rectángulo de la bala.
+     * @param boss Jefe actual (para su tamaño).
+     */
+    boolean hitsBoss(int tick, Boss boss, int x, int y, int width, int height) {
+        Frame frame = ring[Math.floorMod(tick, ring.length)];
+        return frame.bossActive
+                && overlaps(frame.bossX, frame.bossY, boss.getWidth(), boss.getHeight(), x, y, width, height);
+    }
+
+    private static boolean overlaps(int ax, int ay, int aw, int ah, int bx, int by, int bw, int bh) {
+        return ax < bx + bw && bx < ax + aw && ay < by + bh && by < ay + ah;
+    }
+}
@@ -0,0 +1,25 @@
+package com.dirac.spaceinvaders.core;
+
+import java.util.concurrent.atomic.LongAdder; // Sumas con muchos escritores y un lector ocasional
+
+/**
+ * Clase TickStats: Contadores del planificador compartidos por todas las salas.
+ *
+ * Cada sala suma aquí lo que mide en su vuelta (desde el hilo del pool que la
+ * ejecute) y el planificador los lee al hacer el informe periódico. Los totales
+ * nunca decrecen, aunque las salas se cierren, así que los informes pueden
+ * trabajar con diferencias entre lecturas.
+ */
+final class TickStats {
+    final LongAdder ticks = new LongAdder();           // Ticks simulados entre todas las salas
+    final LongAdder overruns = new LongAdder();        // Ticks cuya simulación tardó más que el paso fijo
+    final LongAdder lateTicks = new LongAdder();       // Ticks ejecutados tarde, para recuperar retraso
+    final LongAdder droppedTicks = new LongAdder();    // Ticks descartados al superar el límite de recuperación
+    final LongAdder skippedPasses = new LongAdder();   // Vueltas no lanzadas: la sala seguía en la anterior
+    final LongAdder simulationNanos = new LongAdder();
+    final LongAdder captureNanos = new LongAdder();
+    final LongAdder captures = new LongAdder();
+    final LongAdder broadcastNanos = new LongAdder();  // Codificación y envío (etapa de envío de cada sala)
+    final LongAdder broadcastJobs = new LongAdder();
+    final LongAdder supersededJobs = new LongAdder();
+}
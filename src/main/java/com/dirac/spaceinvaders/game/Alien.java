@@ -27,6 +27,9 @@ public class Alien extends GameObject {
     private int tipo; // Tipo de alien (0, 1, o 2)
     private int puntos; // Puntos que otorga al ser destruido
     private final Color color; // Color según el tipo
+    private boolean bossMinion = false; // true si lo generó el jefe (no pertenece a la formación)
+    private int formationColumn = -1;   // Hueco en la AlienFormation (-1 = fuera de la formación)
+    private int formationRow = -1;
 
     // --- Constructor ---
     /**
@@ -86,6 +89,39 @@ public class Alien extends GameObject {
      */
     public int getTipo() { return tipo; }
 
+    /**
+     * Indica si este alien es un esbirro del jefe en lugar de parte de la formación.
+     * Permite distinguirlos en O(1) sin buscar en la lista de esbirros.
+     * @return true si es un esbirro del jefe.
+     */
+    public boolean isBossMinion() { return bossMinion; }
+
+    /**
+     * Marca este alien como esbirro del jefe (lo hace Boss al generarlo).
+     */
+    public void markAsBossMinion() { this.bossMinion = true; }
+
+    /**
+     * Indica si este alien ocupa un hueco vivo de la formación.
+     * Su posición la fija entonces {@link AlienFormation}.
+     * @return true si pertenece a la formación.
+     */
+    public boolean isInFormation() { return formationColumn >= 0; }
+
+    public int getFormationColumn() { return formationColumn; }
+    public int getFormationRow() { return formationRow; }
+
+    // Sólo AlienFormation asigna y libera huecos.
+    void joinFormation(int column, int row) {
+        this.formationColumn = column;
+        this.formationRow = row;
+    }
+
+    void leaveFormation() {
+        this.formationColumn = -1;
+        this.formationRow = -1;
+    }
+
     // --- Dibujo ---
     /**
      * Dibuja el alien como un rectángulo del color correspondiente a su tipo.
@@ -0,0 +1,177 @@
+package com.dirac.spaceinvaders.game;
+
+import java.io.Serializable; // GameState sigue siendo Serializable
+import java.util.ArrayList;
+import java.util.Arrays;     // Reinicio de los contadores
+import java.util.List;
+import java.util.Random;     // Elección del alien que dispara
+
+/**
+ * Clase AlienFormation: Modelo de la formación clásica de aliens (niveles 1-5)
+ * como una rejilla de huecos con un único desplazamiento compartido.
+ *
+ * La posición de cada alien se deriva de su hueco (columna, fila) y del
+ * desplazamiento de la formación, así que mover la formación es cambiar el
+ * desplazamiento. Se mantiene cuántos aliens vivos hay en cada columna y fila,
+ * y con ello la caja que envuelve a los vivos: al morir un alien sólo se
+ * actualizan sus contadores y, si su columna o fila queda vacía, el borde
+ * avanza hacia dentro. Así la detección de bordes es O(1) en lugar de
+ * recorrer todos los aliens. No es segura para hilos (sólo el hilo del juego).
+ */
+public class AlienFormation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // --- Geometría de la rejilla ---
+    private int originX;
+    private int originY;
+    private int spacingX;
+    private int spacingY;
+
+    // --- Desplazamiento compartido ---
+    private int offsetX;
+    private int offsetY;
+
+    // --- Vivos por columna/fila y caja envolvente (en huecos) ---
+    private int[] liveInColumn = new int[0];
+    private int[] liveInRow = new int[0];
+    private int minColumn, maxColumn, minRow, maxRow;
+    private int liveCount;
+
+    // Miembros de la formación; los muertos se descartan en el siguiente movimiento.
+    private final List<Alien> members = new ArrayList<>();
+
+    /**
+     * Prepara una formación vacía con la geometría dada (al empezar un nivel).
+     * @param originX X del hueco (0, 0) antes de desplazar.
+     * @param originY Y del hueco (0, 0) antes de desplazar.
+     * @param columns Número de columnas.
+     * @param rows Número de filas.
+     * @param spacingX Distancia horizontal entre columnas.
+     * @param spacingY Distancia vertical entre filas.
+     */
+    public void reset(int originX, int originY, int columns, int rows, int spacingX, int spacingY) {
+        for (Alien a : members) a.leaveFormation();
+        members.clear();
+        this.originX = originX;
+        this.originY = originY;
+        this.spacingX = spacingX;
+        this.spacingY = spacingY;
+        this.offsetX = 0;
+        this.offsetY = 0;
+        if (liveInColumn.length < columns) liveInColumn = new int[columns];
+        if (liveInRow.length < rows) liveInRow = new int[rows];
+        Arrays.fill(liveInColumn, 0);
+        Arrays.fill(liveInRow, 0);
+        // Caja vacía: se amplía con cada alien creado.
+        minColumn = Integer.MAX_VALUE;
+        maxColumn = -1;
+        minRow = Integer.MAX_VALUE;
+        maxRow = -1;
+        liveCount = 0;
+    }
+
+    /**
+     * Vacía la formación (por ejemplo, en el nivel del jefe).
+     */
+    public void clear() {
+        reset(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Crea un alien en el hueco indicado y lo añade a la formación.
+     * @param column Columna del hueco.
+     * @param row Fila del hueco.
+     * @param tipo Tipo de alien.
+     * @return El alien creado (el llamador lo añade a la lista del GameState).
+     */
+    public Alien spawn(int column, int row, int tipo) {
+        Alien alien = new Alien(slotX(column), slotY(row), tipo);
+        alien.joinFormation(column, row);
+        members.add(alien);
+        liveInColumn[column]++;
+        liveInRow[row]++;
+        liveCount++;
+        if (column < minColumn) minColumn = column;
+        if (column > maxColumn) maxColumn = column;
+        if (row < minRow) minRow = row;
+        if (row > maxRow) maxRow = row;
+        return alien;
+    }
+
+    /**
+     * Registra la muerte de un alien de la formación y encoge la caja si su
+     * columna o fila se queda vacía. Ignora aliens que no son de la formación.
+     * @param alien Alien destruido.
+     */
+    public void memberDestroyed(Alien alien) {
+        if (!alien.isInFormation()) return;
+        int column = alien.getFormationColumn();
+        int row = alien.getFormationRow();
+        alien.leaveFormation();
+        liveCount--;
+        liveInColumn[column]--;
+        liveInRow[row]--;
+        // Cada borde sólo avanza hacia dentro: coste total acotado por el tamaño de la rejilla.
+        while (minColumn <= maxColumn && liveInColumn[minColumn] == 0) minColumn++;
+        while (maxColumn >= minColumn && liveInColumn[maxColumn] == 0) maxColumn--;
+        while (minRow <= maxRow && liveInRow[minRow] == 0) minRow++;
+        while (maxRow >= minRow && liveInRow[maxRow] == 0) maxRow--;
+    }
+
+    /**
+     * Desplaza toda la formación y recoloca a los vivos en un único recorrido.
+     * @param dx Desplazamiento horizontal.
+     * @param dy Desplazamiento vertical.
+     */
+    public void translate(int dx, int dy) {
+        offsetX += dx;
+        offsetY += dy;
+        int kept = 0;
+        for (int i = 0; i < members.size(); i++) {
+            Alien a = members.get(i);
+            if (!a.isInFormation()) continue;
+            a.setX(slotX(a.getFormationColumn()));
+            a.setY(slotY(a.getFormationRow()));
+            members.set(kept++, a);
+        }
+        for (int i = members.size() - 1; i >= kept; i--) {
+            members.remove(i);
+        }
+    }
+
+    /**
+     * Elige al azar un alien vivo de la formación sin copiar la lista.
+     * @param random Generador de la partida.
+     * @return Un miembro vivo, o null si la formación está vacía.
+     */
+    public Alien randomLiveMember(Random random) {
+        if (liveCount == 0) return null;
+        int remaining = random.nextInt(liveCount);
+        for (int i = 0; i < members.size(); i++) {
+            Alien a = members.get(i);
+            // Los muertos siguen en la lista hasta el próximo movimiento.
+            if (a.isInFormation() && remaining-- == 0) return a;
+        }
+        return null;
+    }
+
+    private int slotX(int column) {
+        return originX + offsetX + column * spacingX;
+    }
+
+    private int slotY(int row) {
+        return originY + offsetY + row * spacingY;
+    }
+
+    // --- Bordes de los vivos (O(1)); sólo válidos si hay alguno vivo ---
+    public int getLeftEdge() { return slotX(minColumn); }
+    public int getRightEdge() { return slotX(maxColumn) + Alien.ALIEN_WIDTH; }
+    public int getTopEdge() { return slotY(minRow); }
+    public int getBottomEdge() { return slotY(maxRow) + Alien.ALIEN_HEIGHT; }
+
+    // --- Getters ---
+    public int getLiveCount() { return liveCount; }
+    public boolean isEmpty() { return liveCount == 0; }
+    public int getOffsetX() { return offsetX; }
+    public int getOffsetY() { return offsetY; }
+}
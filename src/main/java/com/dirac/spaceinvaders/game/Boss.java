@@ -5,8 +5,8 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.io.Serializable;
 import java.util.Random;
-import java.util.ArrayList; // For bullets in special attack
-import java.util.List;     // For bullets in special attack
+import java.util.ArrayList; // For spawned minions
+import java.util.List;     // For spawned minions
 
 public class Boss extends GameObject implements Serializable {
     private static final long serialVersionUID = 2L; // Updated serialVersionUID
@@ -178,25 +178,22 @@ public class Boss extends GameObject implements Serializable {
         return false;
     }
 
-    public List<Bullet> shoot() { // Modified to return a list for potential multi-shot
-        List<Bullet> bullets = new ArrayList<>();
-        if (!isActive()) return bullets;
+    public void shoot(BulletStore bullets) { // Writes the volley straight into the server's bullet store
+        if (!isActive()) return;
 
         // Example: Triple shot
         int bulletY = this.y + this.height;
         int centerX = this.x + this.width / 2 - Bullet.BULLET_WIDTH / 2;
 
-        bullets.add(new Bullet(centerX, bulletY, -1)); // Center
-        bullets.add(new Bullet(centerX - 30, bulletY, -1)); // Left
-        bullets.add(new Bullet(centerX + 30, bulletY, -1)); // Right
+        bullets.spawn(centerX, bulletY, -1); // Center
+        bullets.spawn(centerX - 30, bulletY, -1); // Left
+        bullets.spawn(centerX + 30, bulletY, -1); // Right
         
         // During special attack, maybe a different pattern or more bullets
         if (inSpecialAttackMode) {
-             bullets.add(new Bullet(this.x + Bullet.BULLET_WIDTH, bulletY + 10, -1));
-             bullets.add(new Bullet(this.x + this.width - 2 * Bullet.BULLET_WIDTH, bulletY + 10, -1));
+             bullets.spawn(this.x + Bullet.BULLET_WIDTH, bulletY + 10, -1);
+             bullets.spawn(this.x + this.width - 2 * Bullet.BULLET_WIDTH, bulletY + 10, -1);
         }
-
-        return bullets;
     }
 
     public boolean canSpawnMinion() {
@@ -224,8 +221,10 @@ public class Boss extends GameObject implements Serializable {
             if (minionY + Alien.ALIEN_HEIGHT > GamePanel.ALTO_JUEGO) minionY = GamePanel.ALTO_JUEGO - Alien.ALIEN_HEIGHT - 50;
 
 
-            // Create a small type of alien (e.g., TIPO_PEQUENO)
-            newMinions.add(new Alien(minionX, minionY, Alien.TIPO_PEQUENO));
+            // Create a small type of alien (e.g., TIPO_PEQUENO), tagged so the server never has to search for it
+            Alien minion = new Alien(minionX, minionY, Alien.TIPO_PEQUENO);
+            minion.markAsBossMinion();
+            newMinions.add(minion);
         }
         return newMinions;
     }
@@ -243,6 +242,27 @@ public class Boss extends GameObject implements Serializable {
         return inSpecialAttackMode;
     }
 
+    public int getCurrentPhase() {
+        return currentPhase;
+    }
+
+    // Setters used when rebuilding the boss from a network snapshot on the client
+    public void setCurrentHealth(int currentHealth) {
+        this.currentHealth = currentHealth;
+    }
+
+    public void setMaxHealth(int maxHealth) {
+        this.maxHealth = maxHealth;
+    }
+
+    public void setCurrentPhase(int currentPhase) {
+        this.currentPhase = currentPhase;
+    }
+
+    public void setInSpecialAttackMode(boolean inSpecialAttackMode) {
+        this.inSpecialAttackMode = inSpecialAttackMode;
+    }
+
     @Override
     public void draw(Graphics g) {
         if (!isActive()) return;
@@ -0,0 +1,119 @@
+package com.dirac.spaceinvaders.game;
+
+import java.io.Serializable; // GameState sigue siendo Serializable
+import java.util.Arrays;     // Crecimiento de los arrays
+
+/**
+ * Clase BulletStore: Almacén de balas del servidor en forma de estructura de
+ * arrays (SoA), que hace a la vez de pool.
+ *
+ * Cada bala es un índice en arrays primitivos (x, y, velocidad, dueño, activa,
+ * ID de red) en lugar de un objeto {@link Bullet}. Disparar sólo escribe en la
+ * siguiente posición libre, y {@link #removeInactive()} compacta moviendo la
+ * última bala al hueco (swap-remove), así que en régimen estable no se crea
+ * ni se libera ningún objeto aunque haya cientos de balas por segundo.
+ * Los índices cambian al compactar: no deben guardarse entre ticks (para eso
+ * está el ID de red). No es segura para hilos (sólo el hilo del juego).
+ */
+public class BulletStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // --- Columnas ---
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] speedY = new int[INITIAL_CAPACITY];
+    private int[] owner = new int[INITIAL_CAPACITY];   // ID del jugador, o -1 si es enemiga
+    private int[] netId = new int[INITIAL_CAPACITY];
+    private boolean[] active = new boolean[INITIAL_CAPACITY];
+    private int count = 0;
+
+    /**
+     * Crea una bala nueva. La velocidad depende de quién dispara, como en {@link Bullet}.
+     * @param bulletX Posición X.
+     * @param bulletY Posición Y.
+     * @param ownerId ID del jugador que dispara, o -1 si es un enemigo.
+     * @return Índice de la bala (válido hasta la siguiente compactación).
+     */
+    public int spawn(int bulletX, int bulletY, int ownerId) {
+        if (count == x.length) {
+            grow();
+        }
+        int i = count++;
+        x[i] = bulletX;
+        y[i] = bulletY;
+        owner[i] = ownerId;
+        speedY[i] = ownerId == -1 ? Bullet.ALIEN_BULLET_SPEED : Bullet.PLAYER_BULLET_SPEED;
+        netId[i] = GameObject.allocateNetId();
+        active[i] = true;
+        return i;
+    }
+
+    /**
+     * Mueve todas las balas activas y desactiva las que salen del rango vertical.
+     * @param minY Y mínima permitida.
+     * @param maxY Y máxima permitida.
+     */
+    public void moveAll(int minY, int maxY) {
+        for (int i = 0; i < count; i++) {
+            if (!active[i]) continue;
+            int ny = y[i] + speedY[i];
+            y[i] = ny;
+            if (ny < minY || ny > maxY) {
+                active[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Elimina las balas inactivas moviendo la última a cada hueco (swap-remove).
+     * No conserva el orden.
+     */
+    public void removeInactive() {
+        int i = 0;
+        while (i < count) {
+            if (active[i]) {
+                i++;
+                continue;
+            }
+            int last = --count;
+            if (i != last) {
+                x[i] = x[last];
+                y[i] = y[last];
+                speedY[i] = speedY[last];
+                owner[i] = owner[last];
+                netId[i] = netId[last];
+                active[i] = active[last];
+            }
+        }
+    }
+
+    /**
+     * Elimina todas las balas (por ejemplo, al cambiar de nivel).
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        speedY = Arrays.copyOf(speedY, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        netId = Arrays.copyOf(netId, capacity);
+        active = Arrays.copyOf(active, capacity);
+    }
+
+    // --- Acceso por índice ---
+    public int size() { return count; }
+    public int getX(int i) { return x[i]; }
+    public int getY(int i) { return y[i]; }
+    public int getSpeedY(int i) { return speedY[i]; }
+    public int getOwnerId(int i) { return owner[i]; }
+    public int getNetId(int i) { return netId[i]; }
+    public boolean isActive(int i) { return active[i]; }
+    public boolean isPlayerBullet(int i) { return owner[i] != -1; }
+    public void deactivate(int i) { active[i] = false; }
+}
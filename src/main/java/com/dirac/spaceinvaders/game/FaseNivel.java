@@ -0,0 +1,14 @@
+package com.dirac.spaceinvaders.game;
+
+/**
+ * Enumeración FaseNivel: Estados del flujo de un nivel en el servidor.
+ * Cada fase dura un número de ticks del bucle del juego, así que las
+ * transiciones nunca detienen el bucle: los snapshots y las entradas
+ * siguen fluyendo mientras se pasa de un nivel a otro.
+ */
+public enum FaseNivel {
+    JUGANDO,            // Partida normal: aliens/jefe, colisiones, fin de nivel
+    NIVEL_COMPLETADO,   // Pausa tras superar un nivel (los jugadores pueden moverse)
+    GENERANDO,          // Un tick: se prepara el siguiente nivel y se generan sus entidades
+    INTRO_JEFE          // Presentación del jefe antes de que empiece a atacar
+}
@@ -3,6 +3,7 @@ package com.dirac.spaceinvaders.game;
 import java.awt.Graphics; // Para dibujar
 import java.awt.Rectangle; // Para colisiones
 import java.io.Serializable; // Necesario para enviar por red
+import java.util.concurrent.atomic.AtomicInteger; // Generador de IDs de red
 
 /**
  * Clase abstracta GameObject: Representa cualquier objeto en el juego
@@ -25,6 +26,11 @@ public abstract class GameObject implements Serializable {
     // Indica si el objeto está activo o debe ser eliminado (ej. bala impactada, alien muerto).
     protected boolean active = true;
 
+    // Identificador estable de la entidad en la red. Permite al servidor enviar
+    // sólo los cambios de cada entidad respecto a un snapshot anterior (delta).
+    private static final AtomicInteger NEXT_NET_ID = new AtomicInteger(1);
+    protected int netId;
+
     // --- Constructor ---
     /**
      * Constructor para inicializar un GameObject.
@@ -38,6 +44,16 @@ public abstract class GameObject implements Serializable {
         this.y = y;
         this.width = width;
         this.height = height;
+        this.netId = allocateNetId();
+    }
+
+    /**
+     * Reserva un ID de red nuevo. Lo usan también las entidades que no son
+     * objetos (balas del {@link BulletStore}), para compartir el mismo espacio de IDs.
+     * @return Un ID de red no usado.
+     */
+    static int allocateNetId() {
+        return NEXT_NET_ID.getAndIncrement();
     }
 
     // --- Métodos Abstractos ---
@@ -85,6 +101,18 @@ public abstract class GameObject implements Serializable {
      */
     public int getHeight() { return height; }
 
+    /**
+     * Obtiene el identificador de red de la entidad.
+     * @return El ID de red, único mientras la entidad exista.
+     */
+    public int getNetId() { return netId; }
+
+    /**
+     * Establece el identificador de red (usado al reconstruir un snapshot en el cliente).
+     * @param netId El ID de red asignado por el servidor.
+     */
+    public void setNetId(int netId) { this.netId = netId; }
+
     /**
      * Comprueba si el objeto está activo.
      * @return true si está activo, false en caso contrario.
@@ -97,17 +125,54 @@ public abstract class GameObject implements Serializable {
     public void setActive(boolean active) { this.active = active; }
 
     /**
-     * Devuelve un objeto Rectangle que representa los límites (bounds)
-     * de este GameObject. Útil para la detección de colisiones.
+     * Devuelve un objeto Rectangle nuevo que representa los límites (bounds)
+     * de este GameObject. Crea un objeto en cada llamada: en código que se
+     * ejecuta cada tick, usar {@link #getBounds(Rectangle)} o {@link #intersects}.
      * @return Un Rectangle con la posición y dimensiones del objeto.
      */
     public Rectangle getBounds() {
         return new Rectangle(x, y, width, height);
     }
 
+    /**
+     * Copia los límites de este GameObject en un Rectangle reutilizable.
+     * @param dest Rectángulo de destino (se sobrescribe).
+     * @return El mismo rectángulo recibido, para encadenar llamadas.
+     */
+    public Rectangle getBounds(Rectangle dest) {
+        dest.setBounds(x, y, width, height);
+        return dest;
+    }
+
+    /**
+     * Comprueba si los límites de este objeto se solapan con un rectángulo,
+     * con la misma semántica que Rectangle.intersects pero sin crear objetos.
+     * @param ox X del rectángulo.
+     * @param oy Y del rectángulo.
+     * @param ow Ancho del rectángulo.
+     * @param oh Alto del rectángulo.
+     * @return true si se solapan.
+     */
+    public boolean intersects(int ox, int oy, int ow, int oh) {
+        if (width <= 0 || height <= 0 || ow <= 0 || oh <= 0) {
+            return false;
+        }
+        return ox < x + width && oy < y + height && x < ox + ow && y < oy + oh;
+    }
+
+    /**
+     * Comprueba si los límites de este objeto se solapan con los de otro,
+     * sin tener en cuenta si están activos.
+     * @param other El otro GameObject.
+     * @return true si se solapan.
+     */
+    public boolean intersects(GameObject other) {
+        return intersects(other.x, other.y, other.width, other.height);
+    }
+
     /**
      * Comprueba si este GameObject colisiona con otro GameObject.
-     * Utiliza la intersección de sus rectángulos delimitadores.
+     * Utiliza la intersección de sus rectángulos delimitadores (sin crear objetos).
      * @param other El otro GameObject con el que comprobar la colisión.
      * @return true si hay colisión, false en caso contrario.
      */
@@ -117,6 +182,6 @@ public abstract class GameObject implements Serializable {
             return false;
         }
         // Comprueba si los rectángulos se solapan.
-        return this.getBounds().intersects(other.getBounds());
+        return intersects(other);
     }
 }
\ No newline at end of file
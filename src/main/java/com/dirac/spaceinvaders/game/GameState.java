@@ -12,7 +12,9 @@ public class GameState implements Serializable {
 
     private List<Player> players;
     private List<Alien> aliens;
-    private List<Bullet> bullets;
+    private List<Bullet> bullets;      // Balas como objetos (estado reconstruido en el cliente)
+    private BulletStore bulletStore;   // Balas autoritativas del servidor (arrays primitivos)
+    private AlienFormation formation;  // Formación de los niveles 1-5 (desplazamiento compartido)
     private Boss boss; // New field for the boss
 
     private int level;
@@ -24,6 +26,8 @@ public class GameState implements Serializable {
         this.players = new ArrayList<>();
         this.aliens = new ArrayList<>();
         this.bullets = new ArrayList<>();
+        this.bulletStore = new BulletStore();
+        this.formation = new AlienFormation();
         this.boss = null; // Initialize boss as null
         this.level = 1;
         this.gameOver = false;
@@ -34,6 +38,8 @@ public class GameState implements Serializable {
     public List<Player> getPlayers() { return players; }
     public List<Alien> getAliens() { return aliens; }
     public List<Bullet> getBullets() { return bullets; }
+    public BulletStore getBulletStore() { return bulletStore; }
+    public AlienFormation getFormation() { return formation; }
     public Boss getBoss() { return boss; } // Getter for boss
     public int getLevel() { return level; }
     public Map<Integer, Integer> getScores() { return scores; }
@@ -51,6 +57,7 @@ public class GameState implements Serializable {
     public void setStatusMessage(String statusMessage) { this.statusMessage = statusMessage; }
 
     public void removeInactiveObjects() {
+        bulletStore.removeInactive();
         for (int i = bullets.size() - 1; i >= 0; i--) {
             if (!bullets.get(i).isActive()) {
                 bullets.remove(i);
@@ -23,6 +23,7 @@ public class Player extends GameObject {
     private int score;    // Puntuación actual del jugador
     private int lives;    // ← nueva variable de vidas
     private long respawnTimestamp = 0L;              // instante en que reapareció
+    private int lastInputTick = 0;                   // Tick del cliente del último comando aplicado (reconciliación)
     private static final long INVULNERABILITY_MS = 2000; // 2 segundos
     private final Color color;  // Color para distinguir naves (opcional)
 
@@ -79,6 +80,13 @@ public class Player extends GameObject {
     public int getLives() {
         return lives;
     }
+
+    /**
+     * Establece las vidas restantes (usado al reconstruir un snapshot en el cliente).
+     */
+    public void setLives(int lives) {
+        this.lives = lives;
+    }
     /**
      * Mueve el jugador hacia la derecha, respetando los límites del área de juego.
      * @param maxX Límite derecho del área de juego (borde izquierdo de la pantalla + ancho pantalla - ancho jugador).
@@ -94,6 +102,30 @@ public class Player extends GameObject {
         }
     }
 
+    /**
+     * Tick del cliente del último comando de entrada que el servidor aplicó a esta nave.
+     * El cliente descarta sus comandos predichos hasta este tick y repite los posteriores.
+     */
+    public int getLastInputTick() {
+        return lastInputTick;
+    }
+
+    public void setLastInputTick(int lastInputTick) {
+        this.lastInputTick = lastInputTick;
+    }
+
+    /**
+     * Un paso de movimiento dentro del área de juego. Lo usan el servidor, al aplicar
+     * cada comando, y el cliente, al predecir su propia nave: deben dar lo mismo.
+     */
+    public void step(boolean left, boolean right, boolean up, boolean down) {
+        if (left) moveLeft(0); // Límite izquierdo es 0
+        // El límite es el ancho del panel menos el ancho del jugador.
+        if (right) moveRight(GamePanel.ANCHO_JUEGO - PLAYER_WIDTH);
+        if (up) moveUp(0);
+        if (down) moveDown(GamePanel.ALTO_JUEGO - PLAYER_HEIGHT);
+    }
+
     public boolean isInvulnerable() {
         return System.currentTimeMillis() - respawnTimestamp < INVULNERABILITY_MS;
     }
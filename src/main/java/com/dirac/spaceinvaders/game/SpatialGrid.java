@@ -0,0 +1,154 @@
+package com.dirac.spaceinvaders.game;
+
+import java.util.Arrays;              // Reinicio de las celdas
+import java.util.function.Predicate;  // Filtro de candidatos (activo, no invulnerable...)
+
+/**
+ * Clase SpatialGrid: Rejilla uniforme para la fase amplia (broadphase) de colisiones.
+ *
+ * Cada objeto se inserta en todas las celdas que toca su rectángulo; una
+ * consulta sólo compara contra los objetos de las celdas que toca el
+ * rectángulo consultado, en lugar de contra todos. Se reconstruye en cada
+ * tick con {@link #clear()} + {@link #insert}, sin crear objetos: las listas
+ * de cada celda son enlaces dentro de arrays de enteros que sólo crecen.
+ *
+ * Las consultas devuelven el candidato con menor orden de inserción, así que
+ * el resultado es el mismo que recorrer la lista original y quedarse con el
+ * primero que colisiona. No es segura para hilos (sólo el hilo del juego).
+ *
+ * @param <T> Tipo de objeto almacenado.
+ */
+public class SpatialGrid<T extends GameObject> {
+
+    // Celdas de 32 px: un alien (25x18) ocupa como mucho 2x2 celdas y una bala (4x10), 1x2.
+    public static final int DEFAULT_CELL_SIZE = 32;
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellHead;        // Primera entrada de cada celda (-1 = vacía)
+
+    // Entradas: una por cada par (objeto, celda). Enlazadas por celda.
+    private int[] entryItem = new int[256];
+    private int[] entryNext = new int[256];
+    private int entryCount = 0;
+
+    // Objetos insertados, en orden de inserción.
+    private GameObject[] items = new GameObject[128];
+    private int[] itemStamp = new int[128]; // Última consulta que visitó cada objeto (evita repetirlos)
+    private int itemCount = 0;
+    private int queryStamp = 0;
+
+    /**
+     * Crea una rejilla que cubre el área de juego. Los objetos fuera del área
+     * se asignan a las celdas del borde más cercano.
+     * @param worldWidth Ancho del área de juego.
+     * @param worldHeight Alto del área de juego.
+     * @param cellSize Lado de cada celda en píxeles.
+     */
+    public SpatialGrid(int worldWidth, int worldHeight, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (worldWidth + cellSize - 1) / cellSize;
+        this.rows = (worldHeight + cellSize - 1) / cellSize;
+        this.cellHead = new int[columns * rows];
+        Arrays.fill(cellHead, -1);
+    }
+
+    /**
+     * Vacía la rejilla conservando la memoria reservada.
+     */
+    public void clear() {
+        Arrays.fill(cellHead, -1);
+        Arrays.fill(items, 0, itemCount, null);
+        entryCount = 0;
+        itemCount = 0;
+    }
+
+    /**
+     * Inserta un objeto en todas las celdas que toca.
+     * @param obj Objeto a insertar.
+     */
+    public void insert(T obj) {
+        if (itemCount == items.length) {
+            items = Arrays.copyOf(items, itemCount * 2);
+            itemStamp = Arrays.copyOf(itemStamp, itemCount * 2);
+        }
+        int index = itemCount++;
+        items[index] = obj;
+        itemStamp[index] = queryStamp;
+
+        int c0 = column(obj.getX());
+        int c1 = column(obj.getX() + obj.getWidth() - 1);
+        int r0 = row(obj.getY());
+        int r1 = row(obj.getY() + obj.getHeight() - 1);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                if (entryCount == entryItem.length) {
+                    entryItem = Arrays.copyOf(entryItem, entryCount * 2);
+                    entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+                }
+                int cell = r * columns + c;
+                entryItem[entryCount] = index;
+                entryNext[entryCount] = cellHead[cell];
+                cellHead[cell] = entryCount++;
+            }
+        }
+    }
+
+    /**
+     * Busca el primer objeto insertado (en orden de inserción) que se solapa
+     * con el rectángulo del objeto dado y cumple el filtro.
+     * @param probe Objeto cuyo rectángulo se consulta.
+     * @param filter Condición adicional del candidato (por ejemplo, que esté activo).
+     * @return El objeto encontrado, o null si no hay ninguno.
+     */
+    public T findFirst(GameObject probe, Predicate<? super T> filter) {
+        return findFirst(probe.getX(), probe.getY(), probe.getWidth(), probe.getHeight(), filter);
+    }
+
+    /**
+     * Igual que {@link #findFirst(GameObject, Predicate)} pero con un rectángulo
+     * dado por sus coordenadas (por ejemplo, una bala del {@link BulletStore}).
+     * @param px X del rectángulo.
+     * @param py Y del rectángulo.
+     * @param pw Ancho del rectángulo.
+     * @param ph Alto del rectángulo.
+     * @param filter Condición adicional del candidato.
+     * @return El objeto encontrado, o null si no hay ninguno.
+     */
+    @SuppressWarnings("unchecked")
+    public T findFirst(int px, int py, int pw, int ph, Predicate<? super T> filter) {
+        int c0 = column(px);
+        int c1 = column(px + pw - 1);
+        int r0 = row(py);
+        int r1 = row(py + ph - 1);
+
+        int stamp = ++queryStamp;
+        int best = Integer.MAX_VALUE;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int e = cellHead[r * columns + c]; e != -1; e = entryNext[e]) {
+                    int index = entryItem[e];
+                    if (index >= best || itemStamp[index] == stamp) continue;
+                    itemStamp[index] = stamp;
+                    GameObject candidate = items[index];
+                    if (candidate.intersects(px, py, pw, ph) && filter.test((T) candidate)) {
+                        best = index;
+                    }
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? null : (T) items[best];
+    }
+
+    // --- Utilidades ---
+    private int column(int x) {
+        int c = Math.floorDiv(x, cellSize);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    private int row(int y) {
+        int r = Math.floorDiv(y, cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+}
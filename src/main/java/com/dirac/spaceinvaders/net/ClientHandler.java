@@ -1,171 +1,374 @@
 package com.dirac.spaceinvaders.net;
 
 import com.dirac.spaceinvaders.core.Servidor; // Para interactuar con el servidor principal
-import com.dirac.spaceinvaders.game.GameState; // Para enviar el estado
-import java.io.IOException;         // Para manejo de excepciones de red
-import java.io.ObjectInputStream;   // Para leer objetos del cliente
-import java.io.ObjectOutputStream;  // Para enviar objetos al cliente
-import java.net.Socket;             // La conexión con un cliente específico
-import java.net.SocketException;    // Para detectar desconexiones
+import java.io.IOException;                  // Para manejo de excepciones de red
+import java.net.InetSocketAddress;           // Dirección UDP del cliente
+import java.nio.ByteBuffer;                  // Buffers de lectura/escritura y tramas compartidas
+import java.nio.channels.SelectionKey;       // Registro del canal en el selector
+import java.nio.channels.SocketChannel;      // La conexión con un cliente específico
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Clase ClientHandler: Se ejecuta en un hilo separado en el servidor
- * para manejar la comunicación con un único cliente conectado.
- * Implementa Runnable para poder ser ejecutada por el ExecutorService del servidor.
+ * Clase ClientHandler: Estado de la conexión con un único cliente en el servidor.
+ *
+ * Ya no tiene hilo propio: el reactor de {@link NetworkServer} le avisa cuando
+ * hay datos que leer o espacio para escribir. La lectura separa las tramas del
+ * cliente sobre un buffer directo, y la escritura vacía las tramas ya
+ * codificadas sin bloquear nunca al hilo que las encola.
+ *
+ * La salida de snapshots está acotada: sólo se guarda el más reciente pendiente.
+ * Si el cliente va por detrás (enlace congestionado), los snapshots superados
+ * se descartan en lugar de acumularse, y se cuentan para detectar enlaces malos.
+ * Como cada snapshot es un delta respecto al último confirmado, el siguiente
+ * que se envíe ya incluye los cambios de los descartados.
+ *
+ * Cada cliente recibe snapshots a su propia frecuencia, independiente de la
+ * de la simulación y ajustada según su RTT y sus descartes
+ * (ver {@link SendRateController}).
+ *
+ * Si el cliente acepta el transporte UDP, los snapshots que caben en un
+ * datagrama se envían por UDP (sin reintentos; el tick sirve de número de
+ * secuencia) y las entradas llegan en cuadros numerados y redundantes.
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler {
+
+    // --- Constantes ---
+    private static final int READ_BUFFER_BYTES = 4 * 1024;   // Las tramas del cliente son muy pequeñas
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024; // Buffer directo de salida hacia el socket
+    private static final int MAX_INBOUND_FRAME = 1024;       // Límite de payload aceptado del cliente
 
     // --- Atributos ---
-    private Socket socketCliente;           // Socket de la conexión con este cliente.
-    private ObjectOutputStream outputStream; // Stream para enviar datos (GameState) al cliente.
-    private ObjectInputStream inputStream;  // Stream para recibir datos (MessageAction) del cliente.
-    private Servidor servidor;              // Referencia al servidor principal para interactuar con él.
-    private int playerId;                   // ID único asignado a este cliente por el servidor.
-    private volatile boolean running = true; // Bandera para controlar el bucle de escucha.
+    private final SocketChannel channel;        // Canal no bloqueante con este cliente.
+    private final Servidor servidor;            // Referencia al servidor principal para interactuar con él.
+    private final NetworkServer network;        // Reactor que realiza las escrituras.
+    private final int playerId;                 // ID único asignado a este cliente por el servidor.
+    private SelectionKey key;                   // Registro en el selector (sólo se usa en el reactor).
+
+    // Buffers directos por conexión (sólo los usa el hilo del reactor).
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private ByteBuffer currentFrame;            // Trama que se está copiando al buffer de salida.
+
+    // Tramas de control (handshake): fiables, se envían todas y en orden.
+    private final Queue<ByteBuffer> controlFrames = new ConcurrentLinkedQueue<>();
+    // Cola acotada de snapshots: como máximo uno pendiente, siempre el más reciente.
+    private final AtomicReference<ByteBuffer> pendingSnapshot = new AtomicReference<>();
+    // true mientras un snapshot está en el buffer de salida esperando al socket.
+    private volatile boolean snapshotInFlight = false;
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // --- Estadísticas del enlace ---
+    // Snapshots descartados sin enviar porque llegó uno más nuevo.
+    private final AtomicLong droppedSnapshots = new AtomicLong();
+    // Snapshots que tuvieron que esperar a que saliera el anterior (cliente por detrás).
+    private final AtomicLong coalescedSnapshots = new AtomicLong();
+    private long reportedDroppedSnapshots = 0; // Último valor registrado en el log (hilo del juego)
+
+    // Último tick confirmado por el cliente (MSG_ACK); línea base para los deltas. -1 = ninguno.
+    private volatile int lastAckedTick = -1;
+    // Frecuencia de envío de snapshots adaptada a este enlace.
+    private final SendRateController sendRate;
+
+    // --- Sesión UDP ---
+    private volatile boolean udpOffered = false;        // Se envió MSG_UDP_OFFER
+    private volatile int udpToken;                      // Token que deben traer los datagramas
+    private volatile InetSocketAddress udpAddress;      // Origen del último datagrama válido; null = sólo TCP
+    private final List<InputCommand> inputScratch = new ArrayList<>(WireProtocol.INPUT_REDUNDANCY);
+    private int lastCommandTick = -1;                   // Tick del cliente del último comando (hilo del reactor)
 
     // --- Constructor ---
     /**
-     * Constructor del ClientHandler.
-     * @param socket Socket de la conexión establecida con el cliente.
+     * Constructor del ClientHandler. Encola la trama de ID, que será lo primero
+     * que reciba el cliente.
+     * @param channel Canal de la conexión establecida con el cliente.
      * @param servidor Referencia al objeto Servidor principal.
+     * @param network Reactor de red que atenderá esta conexión.
      * @param playerId ID asignado a este jugador.
      */
-    public ClientHandler(Socket socket, Servidor servidor, int playerId) {
-        this.socketCliente = socket;
+    public ClientHandler(SocketChannel channel, Servidor servidor, NetworkServer network, int playerId) {
+        this.channel = channel;
         this.servidor = servidor;
+        this.network = network;
         this.playerId = playerId;
+        this.sendRate = new SendRateController(servidor.getSendRateHz(), System.nanoTime());
+        controlFrames.offer(WireProtocol.idFrame(playerId, servidor.getTickRateHz()));
+    }
+
+    /**
+     * Asocia la clave del selector una vez registrado el canal (hilo del reactor).
+     */
+    void attachKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    // --- Lectura (hilo del reactor) ---
+    /**
+     * Lee los bytes disponibles y procesa todas las tramas completas.
+     * Las tramas incompletas se conservan en el buffer hasta la siguiente lectura.
+     */
+    void handleRead() {
         try {
-            // IMPORTANTE: Crear ObjectOutputStream PRIMERO antes de ObjectInputStream
-            // puede prevenir bloqueos (deadlock) en la inicialización de streams.
-            this.outputStream = new ObjectOutputStream(socket.getOutputStream());
-            this.inputStream = new ObjectInputStream(socket.getInputStream());
-            System.out.println("Servidor: Streams creados para Jugador " + playerId);
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                System.out.println("Servidor: Cliente " + playerId + " cerró la conexión.");
+                closeConnection();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= WireProtocol.FRAME_HEADER_BYTES) {
+                int start = readBuffer.position();
+                byte type = readBuffer.get(start);
+                int length = readBuffer.getInt(start + 1);
+                if (length < 0 || length > MAX_INBOUND_FRAME) {
+                    System.err.println("Servidor: Trama inválida del cliente " + playerId + " (longitud " + length + "). Desconectando.");
+                    closeConnection();
+                    return;
+                }
+                if (readBuffer.remaining() < WireProtocol.FRAME_HEADER_BYTES + length) {
+                    break; // Trama incompleta: esperar más datos.
+                }
+                dispatch(type, start + WireProtocol.FRAME_HEADER_BYTES, length);
+                readBuffer.position(start + WireProtocol.FRAME_HEADER_BYTES + length);
+            }
+            readBuffer.compact();
         } catch (IOException e) {
-            System.err.println("Error al crear streams para el cliente " + playerId + ": " + e.getMessage());
-            running = false; // No se pudo inicializar, marca para no ejecutar run()
-            closeConnection(); // Intenta cerrar si algo falló
+            // Error de I/O durante la lectura (por ejemplo, conexión reiniciada).
+            System.out.println("Servidor: Cliente " + playerId + " desconectado: " + e.getMessage());
+            closeConnection();
         }
     }
 
-    // --- Ejecución del Hilo ---
     /**
-     * Método run(): Contiene el bucle principal que escucha las acciones enviadas por el cliente.
-     * Se ejecuta cuando el ExecutorService del servidor inicia este manejador.
+     * Procesa una trama completa leyendo el payload directamente del buffer.
+     * @param type Tipo de mensaje.
+     * @param offset Posición absoluta del payload en readBuffer.
+     * @param length Longitud del payload.
+     */
+    private void dispatch(byte type, int offset, int length) {
+        if (type == WireProtocol.MSG_ACK && length == 4) {
+            // Confirmación de snapshot: avanza la línea base de este cliente.
+            acknowledge(readBuffer.getInt(offset));
+        } else if (type == WireProtocol.MSG_COMMAND && length == WireProtocol.COMMAND_BYTES) {
+            receiveCommand(readBuffer.getInt(offset), readBuffer.get(offset + 4) & 0xFF, readBuffer.getInt(offset + 5));
+        } else {
+            // Si recibe algo inesperado, lo registra y lo ignora.
+            System.err.println("Servidor: Recibida trama inesperada del cliente " + playerId + " (tipo " + type + ")");
+        }
+    }
+
+    // --- Transporte UDP ---
+    /**
+     * Ofrece al cliente el transporte UDP enviando su token por TCP (hilo del reactor).
+     * @param token Token de sesión.
+     * @param udpPort Puerto UDP del servidor.
+     */
+    void offerUdp(int token, int udpPort) {
+        this.udpToken = token;
+        this.udpOffered = true;
+        controlFrames.offer(WireProtocol.udpOfferFrame(token, udpPort));
+    }
+
+    /**
+     * Comprueba si un datagrama trae el token de esta sesión.
      */
-    @Override
-    public void run() {
-        // Mensaje inicial: Notifica al cliente su ID.
-        // Podríamos encapsular esto en un objeto específico si el protocolo crece.
+    boolean matchesUdpToken(int token) {
+        return udpOffered && token == udpToken;
+    }
+
+    /**
+     * Procesa un paquete de entrada UDP ya autenticado (hilo del reactor).
+     * El primer paquete válido activa el envío de snapshots por UDP. Cada comando
+     * se acepta una sola vez: los repetidos o atrasados se ignoran.
+     * @param in Datagrama posicionado tras el token.
+     * @param from Dirección de origen (se actualiza si cambia, por ejemplo tras un NAT).
+     */
+    void handleInputDatagram(ByteBuffer in, InetSocketAddress from) {
+        if (closed.get()) return;
+        int ackTick = in.getInt();
+        inputScratch.clear();
         try {
-             outputStream.writeObject("ID:" + this.playerId); // Envía el ID como un String simple
-             outputStream.flush(); // Asegura el envío inmediato
-             System.out.println("Servidor: ID " + playerId + " enviado al cliente.");
+            WireProtocol.readInputCommands(in, inputScratch);
         } catch (IOException e) {
-             System.err.println("Error al enviar ID inicial al cliente " + playerId + ": " + e.getMessage());
-             running = false; // No se pudo comunicar, detener
+            return; // Paquete inválido: se descarta entero.
         }
+        if (udpAddress == null) {
+            System.out.println("Servidor: Cliente " + playerId + " usa UDP desde " + from);
+        }
+        udpAddress = from;
+        acknowledge(ackTick);
+        for (InputCommand command : inputScratch) {
+            receiveCommand(command.getClientTick(), command.getButtons(), command.getViewTick());
+        }
+    }
 
+    // --- Entrada del Jugador ---
+    /**
+     * Registra un comando de entrada (hilo del reactor). Los comandos con un tick
+     * del cliente ya visto se ignoran, así que da igual cuántas veces llegue
+     * cada uno o por qué transporte. Los nuevos se encolan sin bloquear para
+     * que el bucle del juego los aplique al principio de su siguiente tick.
+     * @param clientTick Tick del cliente (número de secuencia).
+     * @param buttons Máscara de botones.
+     * @param viewTick Tick del snapshot que el cliente dibujaba.
+     */
+    private void receiveCommand(int clientTick, int buttons, int viewTick) {
+        if (clientTick <= lastCommandTick) return;
+        lastCommandTick = clientTick;
+        servidor.submitInput(playerId, clientTick, buttons, viewTick);
+    }
 
-        // Bucle principal de escucha mientras la conexión esté activa.
-        while (running) {
-            try {
-                // Lee el objeto enviado por el cliente (espera que sea un MessageAction).
-                // readObject() es bloqueante, espera hasta recibir algo.
-                Object receivedObject = inputStream.readObject();
-
-                // Verifica si lo recibido es del tipo esperado.
-                if (receivedObject instanceof MessageAction) {
-                    MessageAction action = (MessageAction) receivedObject;
-                    // Procesa la acción recibida llamando al método correspondiente en el servidor.
-                    // Es crucial que el servidor maneje estas acciones de forma sincronizada
-                    // para evitar problemas de concurrencia con el bucle principal del juego.
-                    servidor.procesarAccionCliente(this.playerId, action);
-                } else {
-                    // Si recibe algo inesperado, lo registra y podría ser motivo de desconexión.
-                    System.err.println("Servidor: Recibido objeto inesperado del cliente " + playerId + ": " + receivedObject);
-                }
+    // --- Envío de Estado ---
+    /**
+     * Indica si a este cliente le toca recibir un snapshot (hilo de la sala).
+     * Si devuelve true, el llamador debe enviarle el snapshot actual.
+     * @param now Instante actual (System.nanoTime()).
+     * @param slackNanos Margen aceptado, normalmente medio tick de simulación.
+     * @return true si hay que enviarle un snapshot ahora.
+     */
+    public boolean isSnapshotDue(long now, long slackNanos) {
+        return sendRate.isDue(now, slackNanos, droppedSnapshots.get() + coalescedSnapshots.get());
+    }
 
-            } catch (SocketException e) {
-                // SocketException (como Connection reset) usualmente indica que el cliente cerró la conexión.
-                System.out.println("Servidor: Cliente " + playerId + " desconectado (SocketException): " + e.getMessage());
-                running = false; // Termina el bucle de escucha.
-            } catch (IOException e) {
-                // Otro error de I/O durante la lectura.
-                System.err.println("Error de I/O leyendo del cliente " + playerId + ": " + e.getMessage());
-                running = false; // Termina el bucle.
-            } catch (ClassNotFoundException e) {
-                // Error si el objeto recibido no corresponde a una clase conocida.
-                System.err.println("Error: Clase no encontrada al leer del cliente " + playerId + ": " + e.getMessage());
-                // Podría ser un error grave de protocolo o versión.
-                running = false; // Termina el bucle.
+    /**
+     * Deja un snapshot ya codificado como pendiente para este cliente y avisa al reactor.
+     * Lo llama la etapa de envío ({@link SnapshotBroadcaster}) desde un hilo del
+     * pool, no la sala; nunca bloquea.
+     * Si ya había otro snapshot pendiente sin enviar, éste lo sustituye (drop-stale).
+     * La trama puede estar compartida con otros clientes, por lo que se guarda
+     * una vista (duplicate) sin modificar el buffer original.
+     * @param frame Trama completa de sólo lectura (ver {@link WireProtocol#encodeFrame}).
+     * @param tick Tick del snapshot (para medir el RTT con su ACK).
+     */
+    public void sendSnapshot(ByteBuffer frame, int tick) {
+        if (closed.get()) return;
+        sendRate.recordSent(tick, System.nanoTime());
+        InetSocketAddress udp = udpAddress;
+        if (udp != null && frame.remaining() <= WireProtocol.MAX_DATAGRAM_BYTES) {
+            // Por UDP no hay cola: si el sistema no acepta el datagrama, se pierde como cualquier otro.
+            if (!network.sendDatagram(frame.duplicate(), udp)) {
+                droppedSnapshots.incrementAndGet();
             }
+            return;
         }
+        // Por TCP (o snapshots que no caben en un datagrama): ranura de uno, drop-stale.
+        ByteBuffer superseded = pendingSnapshot.getAndSet(frame.duplicate());
+        if (superseded != null) {
+            droppedSnapshots.incrementAndGet();
+        } else if (snapshotInFlight) {
+            coalescedSnapshots.incrementAndGet();
+        }
+        requestWrite();
+    }
 
-        // --- Limpieza al terminar el bucle ---
-        // Notifica al servidor que este cliente se ha desconectado para que pueda eliminarlo.
-        servidor.eliminarCliente(this);
-        // Cierra la conexión y los streams.
-        closeConnection();
-        System.out.println("Servidor: Conexión con cliente " + playerId + " cerrada.");
+    /**
+     * Pide al reactor que escriba, una sola vez hasta que la atienda.
+     */
+    private void requestWrite() {
+        if (writeRequested.compareAndSet(false, true)) {
+            network.requestWrite(this);
+        }
     }
 
-    // --- Envío de Estado ---
+    // --- Escritura (hilo del reactor) ---
     /**
-     * Envía el estado actual del juego a este cliente.
-     * Este método es llamado por el servidor principal (desde su bucle de juego/broadcast).
-     * Debe manejar posibles errores de envío.
-     * @param gameState El objeto GameState a enviar.
-     */
-    public void sendGameState(GameState gameState) {
-        // Solo intenta enviar si la conexión sigue activa y el stream está listo.
-        if (running && outputStream != null) {
-            try {
-                // Escribe el objeto GameState completo en el stream.
-                outputStream.writeObject(gameState);
-                // Importante: reset() evita que ObjectOutputStream cachee objetos enviados
-                // previamente. Sin esto, los clientes podrían recibir estados antiguos
-                // o referencias al mismo objeto si no se modificó profundamente.
-                outputStream.reset();
-                // flush() asegura que los datos se envíen por la red inmediatamente.
-                outputStream.flush();
-            } catch (SocketException se) {
-                // Si ocurre un error de socket al enviar (ej. Broken pipe),
-                // el cliente probablemente se desconectó.
-                System.err.println("Error de Socket al enviar estado a cliente " + playerId + ". Desconectando: " + se.getMessage());
-                running = false; // Marca para detener el hilo de escucha.
-                // No llamar a closeConnection() aquí directamente para evitar doble cierre
-                // si el hilo de escucha también detecta la excepción. El hilo run() lo hará.
-            } catch (IOException e) {
-                // Otro error de I/O al enviar.
-                System.err.println("Error de I/O al enviar estado a cliente " + playerId + ": " + e.getMessage());
-                // Considerar si detener el hilo o solo registrar el error.
-                // Podría ser un error temporal, pero a menudo indica un problema persistente.
-                 running = false; // Marca para detener por precaución.
+     * Escribe en el socket todo lo que admita sin bloquear. Si queda algo
+     * pendiente, se suscribe a OP_WRITE para continuar cuando haya espacio.
+     */
+    void handleWrite() {
+        writeRequested.set(false);
+        if (closed.get()) return;
+        try {
+            while (true) {
+                fillWriteBuffer();
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    writeBuffer.clear();
+                    break; // Nada más que enviar.
+                }
+                channel.write(writeBuffer);
+                boolean socketFull = writeBuffer.hasRemaining();
+                writeBuffer.compact();
+                if (socketFull) break;
+            }
+            snapshotInFlight = writeBuffer.position() > 0 || currentFrame != null;
+            boolean pending = snapshotInFlight || !controlFrames.isEmpty() || pendingSnapshot.get() != null;
+            if (key != null && key.isValid()) {
+                int ops = pending ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ;
+                if (key.interestOps() != ops) key.interestOps(ops);
+            }
+        } catch (IOException e) {
+            // Si ocurre un error de socket al enviar (ej. Broken pipe), el cliente se desconectó.
+            System.err.println("Error al enviar estado a cliente " + playerId + ". Desconectando: " + e.getMessage());
+            closeConnection();
+        }
+    }
+
+    /**
+     * Copia tramas al buffer directo de salida: primero las de control y después,
+     * sólo cuando el anterior ya salió del buffer, el snapshot pendiente más reciente.
+     * Así nunca se apilan snapshots viejos en espacio de usuario.
+     */
+    private void fillWriteBuffer() {
+        while (writeBuffer.hasRemaining()) {
+            if (currentFrame == null) {
+                currentFrame = controlFrames.poll();
+                if (currentFrame == null) {
+                    if (writeBuffer.position() > 0) return; // Hay un snapshot esperando al socket.
+                    currentFrame = pendingSnapshot.getAndSet(null);
+                    if (currentFrame == null) return;
+                }
+            }
+            if (currentFrame.remaining() <= writeBuffer.remaining()) {
+                writeBuffer.put(currentFrame);
+                currentFrame = null;
+            } else {
+                ByteBuffer part = currentFrame.duplicate();
+                part.limit(part.position() + writeBuffer.remaining());
+                writeBuffer.put(part);
+                currentFrame.position(part.position());
             }
         }
     }
 
     // --- Cierre de Conexión ---
     /**
-     * Cierra los streams y el socket de forma segura.
+     * Cierra el canal de forma segura y notifica al servidor (sólo la primera vez).
+     * Puede llamarse desde cualquier hilo.
      */
-    // lo cambie a public generaba error cuando se le llamaba desde otra clase
     public void closeConnection() {
-        running = false; // Asegura que el bucle se detenga
-        try {
-            if (inputStream != null) inputStream.close();
-        } catch (IOException e) {
-            System.err.println("Error al cerrar InputStream para cliente " + playerId + ": " + e.getMessage());
+        if (!closed.compareAndSet(false, true)) return;
+        if (key != null) {
+            key.cancel();
         }
         try {
-            if (outputStream != null) outputStream.close();
+            channel.close();
         } catch (IOException e) {
-            System.err.println("Error al cerrar OutputStream para cliente " + playerId + ": " + e.getMessage());
+            System.err.println("Error al cerrar el canal del cliente " + playerId + ": " + e.getMessage());
         }
-        try {
-            if (socketCliente != null && !socketCliente.isClosed()) socketCliente.close();
-        } catch (IOException e) {
-            System.err.println("Error al cerrar Socket para cliente " + playerId + ": " + e.getMessage());
+        controlFrames.clear();
+        pendingSnapshot.set(null);
+        network.unregisterUdpSession(this);
+        // Notifica al servidor que este cliente se ha desconectado para que pueda eliminarlo.
+        servidor.eliminarCliente(this);
+        System.out.println("Servidor: Conexión con cliente " + playerId + " cerrada.");
+    }
+
+    /**
+     * Registra la confirmación de un snapshot. Sólo avanza: un ACK antiguo
+     * que llegue tarde no hace retroceder la línea base.
+     * @param tick Tick confirmado por el cliente.
+     */
+    private void acknowledge(int tick) {
+        if (tick > lastAckedTick) {
+            lastAckedTick = tick;
+            sendRate.recordAck(tick, System.nanoTime());
         }
     }
 
@@ -178,11 +381,71 @@ public class ClientHandler implements Runnable {
         return playerId;
     }
 
+    /**
+     * Obtiene el último tick de snapshot confirmado por el cliente.
+     * @return El tick confirmado, o -1 si aún no ha confirmado ninguno.
+     */
+    public int getLastAckedTick() {
+        return lastAckedTick;
+    }
+
+    /**
+     * Obtiene cuántos snapshots se descartaron sin enviar porque llegó uno más nuevo.
+     * @return Número de snapshots descartados desde la conexión.
+     */
+    public long getDroppedSnapshots() {
+        return droppedSnapshots.get();
+    }
+
+    /**
+     * Obtiene cuántos snapshots tuvieron que esperar a que terminara de salir el anterior.
+     * @return Número de snapshots retenidos por un enlace lento.
+     */
+    public long getCoalescedSnapshots() {
+        return coalescedSnapshots.get();
+    }
+
+    /**
+     * Obtiene la frecuencia de envío de snapshots actual de este cliente.
+     * @return Snapshots por segundo.
+     */
+    public int getSendRateHz() {
+        return sendRate.getRateHz();
+    }
+
+    /**
+     * Obtiene el RTT suavizado medido con los ACK de snapshot.
+     * @return RTT en milisegundos, o -1 si aún no hay muestras.
+     */
+    public int getRttMillis() {
+        return sendRate.getSmoothedRttMillis();
+    }
+
+    /**
+     * Obtiene el RTT mínimo reciente, la referencia sin colas de la prueba de congestión.
+     * @return RTT mínimo en milisegundos, o -1 si aún no hay muestras.
+     */
+    public int getMinRttMillis() {
+        return sendRate.getMinRttMillis();
+    }
+
+    /**
+     * Devuelve los snapshots descartados desde la última llamada (hilo del juego).
+     * Útil para informar periódicamente sólo de los enlaces que empeoran.
+     * @return Descartes nuevos desde el último informe.
+     */
+    public long takeNewDroppedSnapshots() {
+        long total = droppedSnapshots.get();
+        long fresh = total - reportedDroppedSnapshots;
+        reportedDroppedSnapshots = total;
+        return fresh;
+    }
+
      /**
-      * Comprueba si el manejador sigue activo y corriendo.
-      * @return true si está activo, false si debe detenerse o ya se detuvo.
+      * Comprueba si la conexión sigue abierta.
+      * @return true si está activa, false si ya se cerró.
       */
      public boolean isRunning() {
-         return running;
+         return !closed.get();
      }
-}
\ No newline at end of file
+}
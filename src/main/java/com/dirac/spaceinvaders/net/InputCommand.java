@@ -0,0 +1,51 @@
+package com.dirac.spaceinvaders.net;
+
+/**
+ * Clase InputCommand: El estado de los controles del cliente en uno de sus
+ * cuadros, empaquetado como máscara de bits junto al tick del cliente.
+ *
+ * El cliente muestrea los controles una vez por cuadro y envía un único
+ * comando con todos los botones pulsados, en lugar de un mensaje por tecla.
+ * El servidor guarda el último comando de cada jugador y lo aplica exactamente
+ * una vez por tick de simulación. El tick del cliente sirve también de número
+ * de secuencia: por UDP cada paquete repite los últimos comandos
+ * ({@link WireProtocol#INPUT_REDUNDANCY}) y el servidor descarta los ya vistos.
+ *
+ * Cada comando lleva además el tick del servidor que el cliente estaba
+ * dibujando al muestrearlo, para resolver los disparos contra lo que veía
+ * el jugador (compensación de latencia, con un límite en el servidor).
+ */
+public final class InputCommand {
+
+    // --- Botones (bits de la máscara) ---
+    public static final int BUTTON_LEFT = 1;
+    public static final int BUTTON_RIGHT = 1 << 1;
+    public static final int BUTTON_UP = 1 << 2;
+    public static final int BUTTON_DOWN = 1 << 3;
+    // Disparo: sólo en el cuadro en que se pulsó (flanco), no mientras se mantiene.
+    public static final int BUTTON_SHOOT = 1 << 4;
+    public static final int BUTTON_MASK = 0x1F; // Bits válidos
+
+    private final int clientTick; // Tick del cliente en que se muestreó (creciente por conexión)
+    private final int buttons;    // Máscara BUTTON_*
+    private final int viewTick;   // Tick del snapshot que el cliente dibujaba (-1 si ninguno)
+
+    public InputCommand(int clientTick, int buttons, int viewTick) {
+        this.clientTick = clientTick;
+        this.buttons = buttons & BUTTON_MASK;
+        this.viewTick = viewTick;
+    }
+
+    public int getClientTick() { return clientTick; }
+    public int getButtons() { return buttons; }
+    public int getViewTick() { return viewTick; }
+
+    /**
+     * Comprueba si un botón estaba pulsado en este comando.
+     * @param button Uno de los BUTTON_*.
+     * @return true si está pulsado.
+     */
+    public boolean isPressed(int button) {
+        return (buttons & button) != 0;
+    }
+}
@@ -0,0 +1,327 @@
+package com.dirac.spaceinvaders.net;
+
+import com.dirac.spaceinvaders.core.Servidor; // Para registrar/eliminar clientes
+import java.io.IOException;                  // Errores de red
+import java.net.InetSocketAddress;           // Dirección de escucha
+import java.net.SocketAddress;               // Origen de cada datagrama
+import java.nio.BufferUnderflowException;     // Datagramas truncados
+import java.nio.ByteBuffer;                   // Buffer de recepción UDP
+import java.nio.channels.DatagramChannel;     // Transporte UDP opcional
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;        // Interés de cada canal en el selector
+import java.nio.channels.Selector;            // Multiplexor de eventos de red
+import java.nio.channels.ServerSocketChannel; // Socket de escucha no bloqueante
+import java.nio.channels.SocketChannel;       // Conexión con un cliente
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.security.SecureRandom;            // Tokens de sesión UDP
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Clase NetworkServer: Capa de red del servidor basada en eventos (NIO).
+ *
+ * Un único hilo ("reactor") atiende todas las conexiones con un Selector:
+ * acepta clientes, lee y separa sus tramas, y escribe los snapshots pendientes
+ * cuando el socket lo permite. Ninguna operación bloquea, así que un cliente
+ * lento nunca detiene al bucle del juego ni a los demás clientes, y un solo
+ * hilo puede mantener miles de conexiones abiertas.
+ *
+ * En el mismo puerto escucha también un canal UDP opcional. Tras el handshake
+ * TCP, cada cliente recibe un token (MSG_UDP_OFFER); si envía datagramas de
+ * entrada con ese token, a partir de entonces sus snapshots viajan por UDP,
+ * de forma que un paquete perdido no retrasa a los siguientes.
+ */
+public class NetworkServer implements Runnable {
+
+    // --- Atributos ---
+    private final Servidor servidor;              // Servidor principal (lógica del juego)
+    private final int port;                       // Puerto de escucha
+    private Selector selector;                    // Selector compartido por todas las conexiones
+    private ServerSocketChannel serverChannel;    // Canal de escucha
+    private Thread reactorThread;                 // Hilo que ejecuta run()
+    private volatile boolean running = false;
+    // Manejadores con tramas nuevas en su cola de salida, pendientes de escribir por el reactor.
+    private final Queue<ClientHandler> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    // --- Transporte UDP ---
+    private DatagramChannel udpChannel;           // null si el puerto UDP no está disponible
+    private final ByteBuffer datagramBuffer = ByteBuffer.allocateDirect(1500); // Recepción (hilo del reactor)
+    private final Map<Integer, ClientHandler> udpSessions = new ConcurrentHashMap<>(); // playerId -> manejador
+    private final SecureRandom tokenGenerator = new SecureRandom();
+
+    // --- Constructor ---
+    /**
+     * @param servidor Servidor principal que decide si acepta cada conexión.
+     * @param port Puerto TCP de escucha.
+     */
+    public NetworkServer(Servidor servidor, int port) {
+        this.servidor = servidor;
+        this.port = port;
+    }
+
+    // --- Ciclo de Vida ---
+    /**
+     * Abre el puerto de escucha e inicia el hilo del reactor.
+     * @throws IOException Si el puerto no se puede abrir.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            // El hilo del reactor no llegó a arrancar: nadie más cerrará estos canales.
+            if (serverChannel != null) {
+                try { serverChannel.close(); } catch (IOException ignored) {}
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+            throw e;
+        }
+        openUdpChannel();
+        running = true;
+        reactorThread = new Thread(this, "network-reactor");
+        reactorThread.start();
+    }
+
+    /**
+     * Abre el canal UDP en el mismo puerto. Si falla, el servidor sigue sólo con TCP.
+     */
+    private void openUdpChannel() {
+        try {
+            udpChannel = DatagramChannel.open();
+            udpChannel.configureBlocking(false);
+            udpChannel.bind(new InetSocketAddress(port));
+            udpChannel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            System.err.println("UDP no disponible en el puerto " + port + ", sólo TCP: " + e.getMessage());
+            if (udpChannel != null) {
+                try { udpChannel.close(); } catch (IOException ignored) {}
+            }
+            udpChannel = null;
+        }
+    }
+
+    /**
+     * Detiene el reactor y cierra el puerto y todas las conexiones.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (reactorThread != null) {
+            try {
+                reactorThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Indica si el servidor de red está escuchando.
+     * @return true mientras el reactor esté activo.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    // --- Bucle del Reactor ---
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                processPendingWrites();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        acceptClient();
+                        continue;
+                    }
+                    if (key.channel() == udpChannel) {
+                        receiveDatagrams();
+                        continue;
+                    }
+                    ClientHandler handler = (ClientHandler) key.attachment();
+                    if (key.isReadable()) {
+                        handler.handleRead();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        handler.handleWrite();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Error en el reactor de red: " + e.getMessage());
+            }
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    /**
+     * Acepta una conexión entrante y la registra en el selector si el servidor la admite.
+     */
+    private void acceptClient() {
+        SocketChannel channel = null;
+        ClientHandler handler = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); // Snapshots pequeños: sin esperas de Nagle
+
+            handler = servidor.conectarCliente(channel, this);
+            if (handler == null) {
+                channel.close(); // Rechazado (por ejemplo, servidor lleno)
+                return;
+            }
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ, handler);
+            handler.attachKey(key);
+            if (udpChannel != null) {
+                // Oferta UDP: se envía por TCP justo después de la trama de ID.
+                handler.offerUdp(tokenGenerator.nextInt(), port);
+                udpSessions.put(handler.getPlayerId(), handler);
+            }
+            // La trama de ID ya está en la cola de salida del manejador.
+            handler.handleWrite();
+        } catch (IOException e) {
+            System.err.println("Error al aceptar conexión de cliente: " + e.getMessage());
+            if (handler != null) {
+                // Ya ocupa plaza en una sala: el cierre completo la libera.
+                handler.closeConnection();
+            } else if (channel != null) {
+                try { channel.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Lee todos los datagramas disponibles y entrega cada paquete de entrada
+     * válido (jugador y token correctos) a su manejador. Lo demás se ignora.
+     * Un error de recepción sólo se registra: UDP es un transporte de mejor
+     * esfuerzo y no debe detener el reactor ni desconectar a los jugadores TCP.
+     */
+    private void receiveDatagrams() {
+        while (true) {
+            datagramBuffer.clear();
+            SocketAddress from;
+            try {
+                from = udpChannel.receive(datagramBuffer);
+            } catch (IOException e) {
+                System.err.println("Error al recibir un datagrama UDP (descartado): " + e.getMessage());
+                return; // Se reintenta en la siguiente vuelta del selector.
+            }
+            if (from == null) return; // No quedan datagramas.
+            datagramBuffer.flip();
+            try {
+                byte type = datagramBuffer.get();
+                int length = datagramBuffer.getInt();
+                if (type != WireProtocol.MSG_INPUT || length != datagramBuffer.remaining()) continue;
+                int playerId = datagramBuffer.getInt();
+                int token = datagramBuffer.getInt();
+                ClientHandler handler = udpSessions.get(playerId);
+                if (handler != null && handler.matchesUdpToken(token)) {
+                    handler.handleInputDatagram(datagramBuffer, (InetSocketAddress) from);
+                }
+            } catch (BufferUnderflowException e) {
+                // Datagrama truncado: se descarta.
+            }
+        }
+    }
+
+    /**
+     * Envía una trama como un único datagrama, sin bloquear.
+     * Puede llamarse desde cualquier hilo.
+     * @param frame Trama completa (se consume su contenido restante).
+     * @param to Dirección UDP del cliente.
+     * @return true si el sistema aceptó el datagrama, false si se descartó.
+     */
+    boolean sendDatagram(ByteBuffer frame, SocketAddress to) {
+        DatagramChannel udp = udpChannel;
+        if (udp == null) return false;
+        try {
+            return udp.send(frame, to) > 0;
+        } catch (IOException e) {
+            return false; // UDP no garantiza entrega: se trata como pérdida.
+        }
+    }
+
+    /**
+     * Olvida la sesión UDP de un manejador que se ha cerrado.
+     * @param handler Manejador cerrado.
+     */
+    void unregisterUdpSession(ClientHandler handler) {
+        udpSessions.remove(handler.getPlayerId(), handler);
+    }
+
+    /**
+     * Escribe lo que los demás hilos hayan encolado desde la última vuelta del selector.
+     */
+    private void processPendingWrites() {
+        ClientHandler handler;
+        while ((handler = pendingWrites.poll()) != null) {
+            handler.handleWrite();
+        }
+    }
+
+    /**
+     * Solicita al reactor que escriba la cola de salida de un manejador.
+     * Puede llamarse desde cualquier hilo (normalmente el del bucle del juego).
+     * @param handler Manejador con tramas pendientes.
+     */
+    void requestWrite(ClientHandler handler) {
+        pendingWrites.offer(handler);
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones y el canal de escucha al terminar el reactor.
+     */
+    private void closeAll() {
+        List<ClientHandler> handlers = new ArrayList<>();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof ClientHandler) {
+                handlers.add((ClientHandler) key.attachment());
+            }
+        }
+        for (ClientHandler handler : handlers) {
+            handler.closeConnection();
+        }
+        udpSessions.clear();
+        if (udpChannel != null) {
+            try {
+                udpChannel.close();
+            } catch (IOException e) {
+                System.err.println("Error al cerrar el canal UDP: " + e.getMessage());
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error al cerrar el canal de escucha: " + e.getMessage());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error al cerrar el selector: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.dirac.spaceinvaders.net;
+
+import java.util.concurrent.atomic.AtomicIntegerArray; // Ticks enviados (escribe el juego, lee el reactor)
+import java.util.concurrent.atomic.AtomicLongArray;    // Instante de envío de cada tick
+
+/**
+ * Clase SendRateController: Decide con qué frecuencia recibe snapshots un cliente,
+ * independientemente de la frecuencia de la simulación.
+ *
+ * Parte de la frecuencia objetivo y la ajusta cada segundo según el estado del
+ * enlace (aumento aditivo, reducción multiplicativa):
+ * <ul>
+ *   <li>Si hubo snapshots descartados o retenidos (el enlace no da abasto) o el
+ *       RTT suavizado supera al mínimo reciente en más de {@link #QUEUE_DELAY_MS}
+ *       (se están formando colas), la frecuencia se reduce a la mitad.</li>
+ *   <li>Si no, sube poco a poco hasta la frecuencia objetivo.</li>
+ * </ul>
+ * El RTT se mide con los ACK de snapshot: el tiempo entre el envío de un tick
+ * y su confirmación, suavizado como en TCP (1/8 por muestra). Cada muestra
+ * incluye además lo que tarda el cliente en confirmar (decodificar el
+ * snapshot, o esperar al siguiente paquete de entrada si el ACK viaja en él),
+ * que no es culpa de la red. Por eso la prueba de congestión no mira el RTT
+ * absoluto sino cuánto supera al mínimo de los últimos
+ * {@link #MIN_RTT_WINDOW_NANOS}: ese mínimo es el camino sin colas con la
+ * espera más corta del cliente, y un enlace lejano pero estable no se
+ * penaliza.
+ *
+ * Hilos:
+ * <ul>
+ *   <li>{@link #isDue}: hilo de la sala, al preparar el snapshot del tick (las
+ *       vueltas pueden ir en hilos distintos del pool, pero nunca dos a la vez
+ *       y el relevo entre ellas ya publica estos campos).</li>
+ *   <li>{@link #recordSent}: etapa de envío ({@link SnapshotBroadcaster}), en un
+ *       hilo del pool, al entregar el snapshot ya codificado.</li>
+ *   <li>{@link #recordAck}: hilo del reactor.</li>
+ * </ul>
+ * Cada grupo de campos es de un solo hilo: la frecuencia y su calendario, de
+ * la sala (sólo se publica {@code rateHz}, volátil); los ticks enviados, arrays
+ * atómicos que escribe la etapa de envío y lee el reactor; el RTT, del reactor
+ * (volátil para la sala). La sala y la etapa de envío no comparten ningún
+ * campo no volátil.
+ */
+final class SendRateController {
+
+    // --- Constantes ---
+    static final int MIN_RATE_HZ = 5;                          // Frecuencia mínima para enlaces malos
+    private static final int QUEUE_DELAY_MS = 100;             // RTT sobre el mínimo a partir del cual se reduce la frecuencia
+    private static final long MIN_RTT_WINDOW_NANOS = 10_000_000_000L; // Vigencia de un mínimo de RTT (10 s)
+    private static final int RATE_STEP_HZ = 2;                 // Aumento por evaluación sin problemas
+    private static final long EVALUATE_NANOS = 1_000_000_000L; // Periodo de evaluación (1 s)
+    private static final int SENT_HISTORY = 64;                // Ticks enviados recordados para medir el RTT
+
+    // --- Frecuencia (hilo de la sala) ---
+    private final int targetRateHz;
+    private volatile int rateHz;
+    private long nextSendNanos;
+    private long nextEvaluationNanos;
+    private long lastCongestion; // Descartes + retenidos vistos en la última evaluación
+
+    // --- RTT (ticks enviados: etapa de envío; muestras: reactor) ---
+    private final AtomicIntegerArray sentTicks = new AtomicIntegerArray(SENT_HISTORY);
+    private final AtomicLongArray sentNanos = new AtomicLongArray(SENT_HISTORY);
+    private volatile int smoothedRttMicros = -1; // -1 = sin muestras
+    private volatile int minRttMicros = -1;      // Mínimo de la ventana actual y la anterior (-1 = sin muestras)
+    // Ventanas del mínimo (sólo el hilo del reactor): al rotar, el mínimo antiguo caduca.
+    private int windowMinMicros = -1;
+    private int previousWindowMinMicros = -1;
+    private long windowStartNanos;
+
+    /**
+     * @param targetRateHz Frecuencia máxima de envío (y la inicial).
+     * @param now Instante actual (System.nanoTime()).
+     */
+    SendRateController(int targetRateHz, long now) {
+        this.targetRateHz = Math.max(MIN_RATE_HZ, targetRateHz);
+        this.rateHz = this.targetRateHz;
+        this.nextSendNanos = now;
+        this.nextEvaluationNanos = now + EVALUATE_NANOS;
+        for (int i = 0; i < SENT_HISTORY; i++) sentTicks.set(i, -1);
+    }
+
+    /**
+     * Indica si toca enviar un snapshot y, en ese caso, programa el siguiente.
+     * @param now Instante actual.
+     * @param slackNanos Margen aceptado (medio tick de simulación): los envíos
+     *                   sólo pueden ocurrir en límites de tick.
+     * @param congestion Total acumulado de snapshots descartados y retenidos.
+     * @return true si hay que enviar ahora.
+     */
+    boolean isDue(long now, long slackNanos, long congestion) {
+        if (now - nextEvaluationNanos >= 0) {
+            evaluate(congestion);
+            nextEvaluationNanos = now + EVALUATE_NANOS;
+        }
+        if (now + slackNanos - nextSendNanos < 0) return false;
+        long interval = 1_000_000_000L / rateHz;
+        nextSendNanos += interval;
+        if (nextSendNanos - now < 0) nextSendNanos = now + interval; // Sin ráfagas tras una pausa
+        return true;
+    }
+
+    private void evaluate(long congestion) {
+        boolean congested = congestion > lastCongestion;
+        lastCongestion = congestion;
+        int rtt = smoothedRttMicros;
+        int minRtt = minRttMicros;
+        if (congested || (minRtt >= 0 && rtt - minRtt > QUEUE_DELAY_MS * 1000)) {
+            rateHz = Math.max(MIN_RATE_HZ, rateHz / 2);
+        } else if (rateHz < targetRateHz) {
+            rateHz = Math.min(targetRateHz, rateHz + RATE_STEP_HZ);
+        }
+    }
+
+    /**
+     * Registra el envío de un tick para medir el RTT cuando llegue su ACK
+     * (etapa de envío, hilo del pool de {@link SnapshotBroadcaster}).
+     */
+    void recordSent(int tick, long now) {
+        int slot = tick & (SENT_HISTORY - 1);
+        sentNanos.set(slot, now);
+        sentTicks.set(slot, tick);
+    }
+
+    /**
+     * Toma una muestra de RTT con el ACK de un tick (hilo del reactor).
+     * Los ticks demasiado antiguos o no enviados a este cliente se ignoran.
+     */
+    void recordAck(int tick, long now) {
+        int slot = tick & (SENT_HISTORY - 1);
+        long sentAt = sentNanos.get(slot);
+        if (sentTicks.get(slot) != tick) return;
+        int sample = (int) Math.min(Integer.MAX_VALUE, (now - sentAt) / 1000);
+        int rtt = smoothedRttMicros;
+        smoothedRttMicros = rtt < 0 ? sample : rtt + (sample - rtt) / 8;
+
+        if (windowMinMicros < 0 || now - windowStartNanos >= MIN_RTT_WINDOW_NANOS) {
+            previousWindowMinMicros = windowMinMicros;
+            windowMinMicros = sample;
+            windowStartNanos = now;
+        } else if (sample < windowMinMicros) {
+            windowMinMicros = sample;
+        }
+        minRttMicros = previousWindowMinMicros < 0 ? windowMinMicros : Math.min(windowMinMicros, previousWindowMinMicros);
+    }
+
+    // --- Getters ---
+    int getRateHz() { return rateHz; }
+    int getSmoothedRttMillis() { return smoothedRttMicros < 0 ? -1 : smoothedRttMicros / 1000; }
+    int getMinRttMillis() { return minRttMicros < 0 ? -1 : minRttMicros / 1000; }
+}
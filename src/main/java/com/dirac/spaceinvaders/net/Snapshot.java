@@ -0,0 +1,291 @@
+package com.dirac.spaceinvaders.net;
+
+import com.dirac.spaceinvaders.game.Alien;     // Entidades capturadas
+import com.dirac.spaceinvaders.game.AlienFormation; // Desplazamiento compartido de la formación
+import com.dirac.spaceinvaders.game.Boss;
+import com.dirac.spaceinvaders.game.Bullet;
+import com.dirac.spaceinvaders.game.BulletStore; // Balas del servidor (SoA)
+import com.dirac.spaceinvaders.game.GameState; // Estado de origen/destino
+import com.dirac.spaceinvaders.game.Player;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase Snapshot: Captura inmutable y compacta del GameState en un tick concreto.
+ *
+ * Las entidades se guardan en arrays primitivos ordenados por su ID de red,
+ * con un número fijo de campos enteros por entidad ({@link #STRIDE}). Esto
+ * permite comparar dos snapshots entidad por entidad para codificar sólo
+ * las diferencias (ver {@link SnapshotCodec}).
+ *
+ * Al copiar los valores, el snapshot no comparte objetos mutables con el
+ * estado autoritativo del servidor.
+ *
+ * Los aliens de la formación guardan su posición relativa al desplazamiento
+ * de la formación, que va aparte como dato global: cuando la formación se
+ * mueve, sólo cambia ese desplazamiento y no la entrada de cada alien.
+ */
+public final class Snapshot {
+
+    // --- Tipos de Entidad (coinciden con los tags del protocolo) ---
+    public static final int TYPE_PLAYER = 1;
+    public static final int TYPE_ALIEN = 2;
+    public static final int TYPE_BULLET = 3;
+    public static final int TYPE_BOSS = 4;
+
+    // --- Campos por tipo ---
+    // Número máximo de campos enteros por entidad.
+    public static final int STRIDE = 6;
+    // Número de campos usados por cada tipo (indexado por TYPE_*).
+    static final int[] FIELD_COUNT = {0, 6, 4, 3, 6};
+
+    // Índices de campos comunes.
+    public static final int F_X = 0;
+    public static final int F_Y = 1;
+    // Player: [x, y, playerId, rgb, vidas, último comando aplicado]
+    public static final int F_PLAYER_ID = 2;
+    public static final int F_PLAYER_RGB = 3;
+    public static final int F_PLAYER_LIVES = 4;
+    public static final int F_PLAYER_INPUT_TICK = 5;
+    // Alien: [x, y, tipo, flags] (x, y relativas a la formación si ALIEN_FLAG_FORMATION)
+    public static final int F_ALIEN_TIPO = 2;
+    public static final int F_ALIEN_FLAGS = 3;
+    // Bullet: [x, y, ownerId]
+    public static final int F_BULLET_OWNER = 2;
+    // Boss: [x, y, salud, saludMax, fase, flags]
+    public static final int F_BOSS_HEALTH = 2;
+    public static final int F_BOSS_MAX_HEALTH = 3;
+    public static final int F_BOSS_PHASE = 4;
+    public static final int F_BOSS_FLAGS = 5;
+
+    public static final int BOSS_FLAG_ACTIVE = 1;
+    public static final int BOSS_FLAG_SPECIAL = 2;
+
+    public static final int ALIEN_FLAG_FORMATION = 1;
+
+    // --- Datos Globales ---
+    private final int tick;
+    private final int level;
+    private final boolean gameOver;
+    private final String statusMessage;
+    private final int[] scoreIds;    // IDs de jugador, ordenados
+    private final int[] scoreValues; // Puntuación de cada ID
+    private final int formationX;    // Desplazamiento de la formación de aliens
+    private final int formationY;
+
+    // --- Entidades (ordenadas por netId) ---
+    private final int[] netIds;
+    private final byte[] types;
+    private final int[] fields; // netIds.length * STRIDE
+
+    Snapshot(int tick, int level, boolean gameOver, String statusMessage,
+             int[] scoreIds, int[] scoreValues, int formationX, int formationY,
+             int[] netIds, byte[] types, int[] fields) {
+        this.tick = tick;
+        this.level = level;
+        this.gameOver = gameOver;
+        this.statusMessage = statusMessage == null ? "" : statusMessage;
+        this.scoreIds = scoreIds;
+        this.scoreValues = scoreValues;
+        this.formationX = formationX;
+        this.formationY = formationY;
+        this.netIds = netIds;
+        this.types = types;
+        this.fields = fields;
+    }
+
+    // --- Captura ---
+    /**
+     * Copia el estado actual del juego a un snapshot inmutable.
+     * Debe llamarse desde el hilo que modifica el GameState (el hilo del juego).
+     * @param state Estado autoritativo.
+     * @param tick Número de tick del servidor asociado al snapshot.
+     * @return El snapshot capturado.
+     */
+    public static Snapshot capture(GameState state, int tick) {
+        List<Player> players = state.getPlayers();
+        List<Alien> aliens = state.getAliens();
+        BulletStore bullets = state.getBulletStore();
+        Boss boss = state.getBoss();
+        AlienFormation formation = state.getFormation();
+
+        int capacity = players.size() + aliens.size() + bullets.size() + (boss != null ? 1 : 0);
+        int[] ids = new int[capacity];
+        byte[] typ = new byte[capacity];
+        int[] val = new int[capacity * STRIDE];
+        int n = 0;
+
+        for (Player p : players) {
+            if (!p.isActive()) continue;
+            int base = n * STRIDE;
+            ids[n] = p.getNetId();
+            typ[n] = TYPE_PLAYER;
+            val[base + F_X] = p.getX();
+            val[base + F_Y] = p.getY();
+            val[base + F_PLAYER_ID] = p.getPlayerId();
+            val[base + F_PLAYER_RGB] = p.getColor().getRGB();
+            val[base + F_PLAYER_LIVES] = p.getLives();
+            val[base + F_PLAYER_INPUT_TICK] = p.getLastInputTick();
+            n++;
+        }
+        for (Alien a : aliens) {
+            if (!a.isActive()) continue;
+            int base = n * STRIDE;
+            ids[n] = a.getNetId();
+            typ[n] = TYPE_ALIEN;
+            if (a.isInFormation()) {
+                // Constante mientras la formación se desplaza: no genera delta.
+                val[base + F_X] = a.getX() - formation.getOffsetX();
+                val[base + F_Y] = a.getY() - formation.getOffsetY();
+                val[base + F_ALIEN_FLAGS] = ALIEN_FLAG_FORMATION;
+            } else {
+                val[base + F_X] = a.getX();
+                val[base + F_Y] = a.getY();
+            }
+            val[base + F_ALIEN_TIPO] = a.getTipo();
+            n++;
+        }
+        for (int i = 0; i < bullets.size(); i++) { // Vista directa de los arrays del servidor
+            if (!bullets.isActive(i)) continue;
+            int base = n * STRIDE;
+            ids[n] = bullets.getNetId(i);
+            typ[n] = TYPE_BULLET;
+            val[base + F_X] = bullets.getX(i);
+            val[base + F_Y] = bullets.getY(i);
+            val[base + F_BULLET_OWNER] = bullets.getOwnerId(i);
+            n++;
+        }
+        if (boss != null) {
+            int base = n * STRIDE;
+            ids[n] = boss.getNetId();
+            typ[n] = TYPE_BOSS;
+            val[base + F_X] = boss.getX();
+            val[base + F_Y] = boss.getY();
+            val[base + F_BOSS_HEALTH] = boss.getCurrentHealth();
+            val[base + F_BOSS_MAX_HEALTH] = boss.getMaxHealth();
+            val[base + F_BOSS_PHASE] = boss.getCurrentPhase();
+            int flags = 0;
+            if (boss.isActive()) flags |= BOSS_FLAG_ACTIVE;
+            if (boss.isInSpecialAttackMode()) flags |= BOSS_FLAG_SPECIAL;
+            val[base + F_BOSS_FLAGS] = flags;
+            n++;
+        }
+
+        // Ordena por netId: (netId << 32 | índice) ordena por ID y conserva el índice original.
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] sortedIds = new int[n];
+        byte[] sortedTypes = new byte[n];
+        int[] sortedFields = new int[n * STRIDE];
+        for (int i = 0; i < n; i++) {
+            int src = (int) order[i];
+            sortedIds[i] = ids[src];
+            sortedTypes[i] = typ[src];
+            System.arraycopy(val, src * STRIDE, sortedFields, i * STRIDE, STRIDE);
+        }
+
+        // Puntuaciones ordenadas por ID de jugador.
+        Map<Integer, Integer> scores = state.getScores();
+        int[] scoreIds = new int[scores == null ? 0 : scores.size()];
+        int[] scoreValues = new int[scoreIds.length];
+        if (scores != null) {
+            int i = 0;
+            for (Integer id : scores.keySet()) scoreIds[i++] = id;
+            Arrays.sort(scoreIds);
+            for (i = 0; i < scoreIds.length; i++) scoreValues[i] = scores.get(scoreIds[i]);
+        }
+
+        return new Snapshot(tick, state.getLevel(), state.isGameOver(), state.getStatusMessage(),
+                scoreIds, scoreValues, formation.getOffsetX(), formation.getOffsetY(),
+                sortedIds, sortedTypes, sortedFields);
+    }
+
+    // --- Reconstrucción ---
+    /**
+     * Construye un GameState dibujable a partir del snapshot (lado cliente).
+     * @return Un GameState nuevo con objetos propios.
+     */
+    public GameState toGameState() {
+        GameState state = new GameState();
+        state.setLevel(level);
+        state.setGameOver(gameOver);
+        state.setStatusMessage(statusMessage);
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (int i = 0; i < scoreIds.length; i++) {
+            scores.put(scoreIds[i], scoreValues[i]);
+        }
+        state.setScores(scores);
+
+        for (int i = 0; i < netIds.length; i++) {
+            int base = i * STRIDE;
+            int x = fields[base + F_X];
+            int y = fields[base + F_Y];
+            switch (types[i]) {
+                case TYPE_PLAYER: {
+                    Player p = new Player(x, y, fields[base + F_PLAYER_ID], new Color(fields[base + F_PLAYER_RGB], true));
+                    p.setLives(fields[base + F_PLAYER_LIVES]);
+                    p.setLastInputTick(fields[base + F_PLAYER_INPUT_TICK]);
+                    p.setNetId(netIds[i]);
+                    state.getPlayers().add(p);
+                    break;
+                }
+                case TYPE_ALIEN: {
+                    if ((fields[base + F_ALIEN_FLAGS] & ALIEN_FLAG_FORMATION) != 0) {
+                        x += formationX;
+                        y += formationY;
+                    }
+                    Alien a = new Alien(x, y, fields[base + F_ALIEN_TIPO]);
+                    a.setNetId(netIds[i]);
+                    state.getAliens().add(a);
+                    break;
+                }
+                case TYPE_BULLET: {
+                    Bullet b = new Bullet(x, y, fields[base + F_BULLET_OWNER]);
+                    b.setNetId(netIds[i]);
+                    state.getBullets().add(b);
+                    break;
+                }
+                case TYPE_BOSS: {
+                    Boss boss = new Boss(x, y);
+                    boss.setCurrentHealth(fields[base + F_BOSS_HEALTH]);
+                    boss.setMaxHealth(fields[base + F_BOSS_MAX_HEALTH]);
+                    boss.setCurrentPhase(fields[base + F_BOSS_PHASE]);
+                    int flags = fields[base + F_BOSS_FLAGS];
+                    boss.setActive((flags & BOSS_FLAG_ACTIVE) != 0);
+                    boss.setInSpecialAttackMode((flags & BOSS_FLAG_SPECIAL) != 0);
+                    boss.setNetId(netIds[i]);
+                    state.setBoss(boss);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return state;
+    }
+
+    // --- Getters ---
+    public int getTick() { return tick; }
+    public int getLevel() { return level; }
+    public boolean isGameOver() { return gameOver; }
+    public String getStatusMessage() { return statusMessage; }
+    public int getFormationX() { return formationX; }
+    public int getFormationY() { return formationY; }
+    public int getEntityCount() { return netIds.length; }
+    public int getNetId(int index) { return netIds[index]; }
+    public int getType(int index) { return types[index]; }
+    public int getField(int index, int field) { return fields[index * STRIDE + field]; }
+
+    // Acceso directo para el códec (mismo paquete); los arrays no deben modificarse.
+    int[] scoreIds() { return scoreIds; }
+    int[] scoreValues() { return scoreValues; }
+    int[] netIds() { return netIds; }
+    byte[] types() { return types; }
+    int[] fields() { return fields; }
+}
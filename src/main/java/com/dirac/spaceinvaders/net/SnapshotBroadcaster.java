@@ -0,0 +1,196 @@
+package com.dirac.spaceinvaders.net;
+
+import java.nio.ByteBuffer;                      // Tramas codificadas compartidas entre clientes
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;            // Pool en el que se ejecuta la etapa
+import java.util.concurrent.atomic.AtomicBoolean;   // Como mucho una pasada de la etapa en curso
+import java.util.concurrent.atomic.AtomicLong;   // Estadísticas leídas desde otros hilos
+import java.util.concurrent.atomic.AtomicReference; // Buffer de entrega de una posición
+
+/**
+ * Clase SnapshotBroadcaster: Segunda etapa del tick de una sala. Codifica y
+ * entrega a los clientes los snapshots que publica la sala, en un hilo del
+ * pool compartido, mientras la sala ya simula el tick siguiente.
+ *
+ * La entrega entre etapas es un buffer de una posición (como la ranura de
+ * snapshots de {@link ClientHandler}): si esta etapa va por detrás, el trabajo
+ * pendiente se sustituye por el más reciente y se cuenta como superado. El
+ * nuevo hereda los destinatarios del superado (cada cliente tiene su propio
+ * ritmo de envío y podía tocarle sólo en aquel), así que nadie se queda sin
+ * su envío. Los snapshots son inmutables, así que no hace falta ningún lock
+ * entre etapas.
+ *
+ * No tiene hilo propio: al entregar un trabajo se lanza una pasada en el pool
+ * si no hay ya una en curso, y la pasada procesa trabajos hasta vaciar el
+ * buffer. Así cientos de salas comparten un número fijo de hilos. El historial
+ * de líneas base y el códec sólo los usa la pasada en curso (nunca hay dos).
+ */
+public class SnapshotBroadcaster implements Runnable {
+
+    /**
+     * Trabajo de una vuelta: snapshot y clientes a los que les toca recibirlo.
+     */
+    private static final class Job {
+        final Snapshot snapshot;
+        final List<ClientHandler> handlers;
+        final boolean spectate; // También toca trama para los espectadores
+
+        Job(Snapshot snapshot, List<ClientHandler> handlers, boolean spectate) {
+            this.snapshot = snapshot;
+            this.handlers = handlers;
+            this.spectate = spectate;
+        }
+
+        /**
+         * Este trabajo con los destinatarios de uno anterior al que sustituye:
+         * unión de clientes (sin repetir) y trama de espectador si tocaba en alguno.
+         */
+        Job absorb(Job superseded) {
+            List<ClientHandler> merged = new ArrayList<>(handlers);
+            for (ClientHandler handler : superseded.handlers) {
+                if (!merged.contains(handler)) merged.add(handler);
+            }
+            return new Job(snapshot, merged, spectate || superseded.spectate);
+        }
+    }
+
+    // --- Entrega entre etapas ---
+    private final Executor executor;
+    private final AtomicReference<Job> pending = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false); // Hay una pasada lanzada o en curso
+    private volatile boolean running = true;
+
+    // --- Estado de la etapa (sólo la pasada en curso) ---
+    private final SnapshotHistory sentSnapshots; // Snapshots enviados, por tick
+    private final SnapshotCodec codec = new SnapshotCodec();
+    // Tramas codificadas en el trabajo actual, por tick base (-1 = completo). Se vacía en cada trabajo.
+    private final Map<Integer, ByteBuffer> encodedByBaseline = new HashMap<>();
+
+    // --- Flujo de espectadores (sólo la pasada en curso, salvo el feed) ---
+    private final SpectatorFeed spectators;
+    private final int keyframeInterval;          // Tramas de espectador entre snapshots completos
+    private Snapshot lastSpectatorSnapshot;      // Base del siguiente delta del flujo
+    private int framesSinceKeyframe = 0;
+
+    // --- Estadísticas ---
+    private final AtomicLong processedJobs = new AtomicLong();
+    private final AtomicLong supersededJobs = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();      // Tiempo codificando y entregando
+
+    /**
+     * @param executor Pool en el que se ejecutan las pasadas de la etapa.
+     * @param spectators Flujo de espectadores de la sala.
+     * @param keyframeInterval Tramas de espectador entre snapshots completos (para los relés).
+     * @param tickRateHz Frecuencia de la sala; fija cuántos ticks se conservan como líneas base.
+     */
+    public SnapshotBroadcaster(Executor executor, SpectatorFeed spectators, int keyframeInterval, int tickRateHz) {
+        this.executor = executor;
+        this.sentSnapshots = new SnapshotHistory(SnapshotHistory.capacityFor(tickRateHz));
+        this.spectators = spectators;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    /**
+     * Detiene la etapa y descarta el trabajo pendiente.
+     */
+    public void stop() {
+        running = false;
+        pending.set(null);
+        spectators.close();
+    }
+
+    /**
+     * Entrega un snapshot a la etapa (hilo de la sala). Nunca bloquea.
+     * @param snapshot Snapshot inmutable del tick.
+     * @param handlers Clientes a los que les toca (puede estar vacía); la lista pasa a ser de la etapa.
+     * @param spectate true si también toca trama para los espectadores.
+     */
+    public void submit(Snapshot snapshot, List<ClientHandler> handlers, boolean spectate) {
+        if (!running) return;
+        Job job = new Job(snapshot, handlers, spectate);
+        Job previous;
+        Job next;
+        do {
+            previous = pending.get();
+            next = previous == null ? job : job.absorb(previous);
+        } while (!pending.compareAndSet(previous, next));
+        if (previous != null) {
+            supersededJobs.incrementAndGet();
+        }
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Una pasada de la etapa: procesa trabajos hasta que el buffer queda vacío.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            Job job = pending.getAndSet(null);
+            if (job == null || !running) {
+                draining.set(false);
+                // Un trabajo entregado justo antes de soltar el flag no lanzó pasada: se recoge aquí.
+                if (running && pending.get() != null && draining.compareAndSet(false, true)) continue;
+                return;
+            }
+            long start = System.nanoTime();
+            broadcast(job.snapshot, job.handlers, job.spectate);
+            busyNanos.addAndGet(System.nanoTime() - start);
+            processedJobs.incrementAndGet();
+        }
+    }
+
+    /**
+     * Cada cliente recibe un delta respecto al último snapshot que confirmó;
+     * si esa línea base ya no está en el historial, recibe el estado completo.
+     * El snapshot se codifica una sola vez por línea base distinta y la misma
+     * trama de sólo lectura se entrega a todos los clientes que la comparten,
+     * así que el coste de codificación no crece con el número de clientes.
+     *
+     * Los espectadores comparten una única trama por vuelta: un delta respecto
+     * a la trama anterior de su flujo, o un snapshot completo si alguno lo
+     * necesita o toca el periódico. Si coincide con la base de algún jugador,
+     * ni siquiera se codifica aparte.
+     */
+    private void broadcast(Snapshot snapshot, List<ClientHandler> handlers, boolean spectate) {
+        sentSnapshots.put(snapshot);
+        for (ClientHandler handler : handlers) {
+            // Verifica si el handler sigue activo antes de intentar enviar.
+            if (!handler.isRunning()) continue;
+            Snapshot baseline = sentSnapshots.get(handler.getLastAckedTick());
+            handler.sendSnapshot(encodeFor(snapshot, baseline), snapshot.getTick());
+        }
+        if (spectate) {
+            boolean keyframe = spectators.takeKeyframeRequest() || lastSpectatorSnapshot == null
+                    || ++framesSinceKeyframe >= keyframeInterval;
+            if (keyframe) framesSinceKeyframe = 0;
+            spectators.publish(encodeFor(snapshot, keyframe ? null : lastSpectatorSnapshot), keyframe);
+            lastSpectatorSnapshot = snapshot;
+        }
+        encodedByBaseline.clear();
+    }
+
+    /**
+     * Trama del snapshot respecto a una base, codificada como mucho una vez por trabajo.
+     */
+    private ByteBuffer encodeFor(Snapshot snapshot, Snapshot baseline) {
+        int baseTick = baseline == null ? -1 : baseline.getTick();
+        ByteBuffer frame = encodedByBaseline.get(baseTick);
+        if (frame == null) {
+            int length = codec.encode(snapshot, baseline);
+            frame = WireProtocol.encodeFrame(WireProtocol.MSG_SNAPSHOT, codec.getBuffer(), length);
+            encodedByBaseline.put(baseTick, frame);
+        }
+        return frame;
+    }
+
+    // --- Getters ---
+    public long getProcessedJobs() { return processedJobs.get(); }
+    public long getSupersededJobs() { return supersededJobs.get(); }
+    public long getBusyNanos() { return busyNanos.get(); }
+}
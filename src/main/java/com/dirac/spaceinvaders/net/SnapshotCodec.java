@@ -0,0 +1,476 @@
+package com.dirac.spaceinvaders.net;
+
+import java.io.IOException;               // Errores de formato
+import java.nio.BufferUnderflowException; // Snapshot truncado
+import java.nio.ByteBuffer;               // Lectura del payload
+import java.nio.charset.StandardCharsets; // Codificación del mensaje de estado
+import java.util.Arrays;
+
+/**
+ * Clase SnapshotCodec: Codifica un {@link Snapshot} en un formato binario compacto
+ * y versionado, completo o como delta respecto a una línea base, y lo reconstruye
+ * en el cliente.
+ *
+ * Sustituye a la serialización Java, que enviaba descriptores de clase,
+ * Integer/Color en caja y referencias de objetos en cada tick.
+ *
+ * Formato (versión {@link #SNAPSHOT_VERSION}):
+ * <pre>
+ *   u8      versión
+ *   varint  tick
+ *   varint  tick base + 1 (0 = snapshot completo, sin línea base)
+ *   u8      máscara de globales cambiados (nivel, flags, mensaje, puntuaciones, formación)
+ *   ...     globales presentes en la máscara
+ *   varint  nº de entidades eliminadas, cada una: varint salto de netId
+ *   varint  nº de entidades nuevas o cambiadas, cada una:
+ *             varint salto de netId, u8 cabecera
+ *             cabecera con bit 7: entidad nueva, bits 0-6 = tipo, campos completos
+ *             cabecera sin bit 7: máscara de campos cambiados, zigzag(nuevo - base) por campo
+ * </pre>
+ * Campos completos por tipo (posiciones en 16 bits con signo, suficiente para 800x600):
+ * <pre>
+ *   PLAYER: i16 x, i16 y, varint id, i32 rgb, u8 vidas, varint tick del último comando aplicado
+ *   ALIEN:  i16 x, i16 y, u8 tipo, u8 flags (x, y relativas a la formación si flags & 1)
+ *   BULLET: i16 x, i16 y, zigzag ownerId
+ *   BOSS:   i16 x, i16 y, varint salud, varint saludMax, varint fase, u8 flags
+ * </pre>
+ * Las entidades sin cambios respecto a la base no ocupan ningún byte.
+ * Una instancia reutiliza su buffer interno entre llamadas a encode(), por lo
+ * que no debe compartirse entre hilos.
+ */
+public class SnapshotCodec {
+
+    // --- Versión del formato del snapshot ---
+    public static final int SNAPSHOT_VERSION = 4;
+
+    // --- Máscara de datos globales ---
+    private static final int G_LEVEL = 1;
+    private static final int G_FLAGS = 2;
+    private static final int G_STATUS = 4;
+    private static final int G_SCORES = 8;
+    private static final int G_FORMATION = 16;
+    private static final int G_ALL = G_LEVEL | G_FLAGS | G_STATUS | G_SCORES | G_FORMATION;
+
+    private static final int FLAG_GAME_OVER = 1;
+    private static final int HEAD_NEW = 0x80;
+
+    // --- Codificación de cada campo en su forma completa ---
+    private static final int K_SHORT = 0;
+    private static final int K_INT = 1;
+    private static final int K_VARINT = 2;
+    private static final int K_ZIGZAG = 3;
+    private static final int K_BYTE = 4;
+    private static final int[][] FIELD_KINDS = {
+        {},
+        {K_SHORT, K_SHORT, K_VARINT, K_INT, K_BYTE, K_VARINT},         // PLAYER
+        {K_SHORT, K_SHORT, K_BYTE, K_BYTE},                             // ALIEN
+        {K_SHORT, K_SHORT, K_ZIGZAG},                                   // BULLET
+        {K_SHORT, K_SHORT, K_VARINT, K_VARINT, K_VARINT, K_BYTE},       // BOSS
+    };
+
+    // --- Buffer de escritura reutilizable ---
+    private byte[] buffer = new byte[4096];
+    private int position;
+
+    // --- Codificación ---
+    /**
+     * Codifica el snapshot en el buffer interno, como delta si hay línea base.
+     * El resultado es válido hasta la siguiente llamada a encode().
+     * @param current Snapshot a enviar.
+     * @param baseline Último snapshot confirmado por el cliente, o null para enviar uno completo.
+     * @return Número de bytes escritos (ver {@link #getBuffer()}).
+     */
+    public int encode(Snapshot current, Snapshot baseline) {
+        position = 0;
+        putByte(SNAPSHOT_VERSION);
+        putVarInt(current.getTick());
+        putVarInt(baseline == null ? 0 : baseline.getTick() + 1);
+
+        // --- Globales ---
+        int mask = G_ALL;
+        if (baseline != null) {
+            mask = 0;
+            if (current.getLevel() != baseline.getLevel()) mask |= G_LEVEL;
+            if (current.isGameOver() != baseline.isGameOver()) mask |= G_FLAGS;
+            if (!current.getStatusMessage().equals(baseline.getStatusMessage())) mask |= G_STATUS;
+            if (!Arrays.equals(current.scoreIds(), baseline.scoreIds())
+                    || !Arrays.equals(current.scoreValues(), baseline.scoreValues())) mask |= G_SCORES;
+            if (current.getFormationX() != baseline.getFormationX()
+                    || current.getFormationY() != baseline.getFormationY()) mask |= G_FORMATION;
+        }
+        putByte(mask);
+        if ((mask & G_LEVEL) != 0) putVarInt(current.getLevel());
+        if ((mask & G_FLAGS) != 0) putByte(current.isGameOver() ? FLAG_GAME_OVER : 0);
+        if ((mask & G_STATUS) != 0) putString(current.getStatusMessage());
+        if ((mask & G_SCORES) != 0) {
+            int[] ids = current.scoreIds();
+            int[] values = current.scoreValues();
+            putVarInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                putVarInt(ids[i]);
+                putVarInt(zigzag(values[i]));
+            }
+        }
+        if ((mask & G_FORMATION) != 0) {
+            // Un movimiento de toda la formación cuesta estos dos valores, no un delta por alien.
+            putVarInt(zigzag(current.getFormationX()));
+            putVarInt(zigzag(current.getFormationY()));
+        }
+
+        int[] curIds = current.netIds();
+        int[] baseIds = baseline == null ? new int[0] : baseline.netIds();
+
+        // --- Eliminadas: en la base pero no en el actual (merge de listas ordenadas) ---
+        int removed = 0;
+        for (int i = 0, j = 0; i < baseIds.length; i++) {
+            while (j < curIds.length && curIds[j] < baseIds[i]) j++;
+            if (j >= curIds.length || curIds[j] != baseIds[i]) removed++;
+        }
+        putVarInt(removed);
+        int lastId = 0;
+        for (int i = 0, j = 0; i < baseIds.length; i++) {
+            while (j < curIds.length && curIds[j] < baseIds[i]) j++;
+            if (j >= curIds.length || curIds[j] != baseIds[i]) {
+                putVarInt(baseIds[i] - lastId);
+                lastId = baseIds[i];
+            }
+        }
+
+        // --- Nuevas o cambiadas (se cuentan primero para escribir el recuento delante) ---
+        int upserts = 0;
+        for (int i = 0, j = 0; i < curIds.length; i++) {
+            while (j < baseIds.length && baseIds[j] < curIds[i]) j++;
+            if (j >= baseIds.length || baseIds[j] != curIds[i] || changedMask(current, i, baseline, j) != 0) upserts++;
+        }
+        putVarInt(upserts);
+        lastId = 0;
+        int[] curFields = current.fields();
+        for (int i = 0, j = 0; i < curIds.length; i++) {
+            while (j < baseIds.length && baseIds[j] < curIds[i]) j++;
+            int type = current.types()[i];
+            int base = i * Snapshot.STRIDE;
+            if (j >= baseIds.length || baseIds[j] != curIds[i]) {
+                // Entidad nueva: todos los campos.
+                putVarInt(curIds[i] - lastId);
+                lastId = curIds[i];
+                putByte(HEAD_NEW | type);
+                int[] kinds = FIELD_KINDS[type];
+                for (int f = 0; f < kinds.length; f++) {
+                    putField(kinds[f], curFields[base + f]);
+                }
+            } else {
+                int changed = changedMask(current, i, baseline, j);
+                if (changed == 0) continue;
+                putVarInt(curIds[i] - lastId);
+                lastId = curIds[i];
+                putByte(changed);
+                int[] baseFields = baseline.fields();
+                int bBase = j * Snapshot.STRIDE;
+                for (int f = 0; f < Snapshot.STRIDE; f++) {
+                    if ((changed & (1 << f)) != 0) {
+                        putVarInt(zigzag(curFields[base + f] - baseFields[bBase + f]));
+                    }
+                }
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Calcula qué campos de la entidad i (actual) difieren de la entidad j (base).
+     */
+    private static int changedMask(Snapshot current, int i, Snapshot baseline, int j) {
+        int[] a = current.fields();
+        int[] b = baseline.fields();
+        int aBase = i * Snapshot.STRIDE;
+        int bBase = j * Snapshot.STRIDE;
+        int count = Snapshot.FIELD_COUNT[current.types()[i]];
+        int mask = 0;
+        for (int f = 0; f < count; f++) {
+            if (a[aBase + f] != b[bBase + f]) mask |= 1 << f;
+        }
+        return mask;
+    }
+
+    /**
+     * Devuelve el buffer interno con el último snapshot codificado.
+     * @return El array (válido hasta la posición devuelta por encode()).
+     */
+    public byte[] getBuffer() { return buffer; }
+
+    // --- Decodificación ---
+    /**
+     * Reconstruye un snapshot completo a partir de un snapshot codificado.
+     * @param in Buffer posicionado al inicio del snapshot.
+     * @param history Snapshots recibidos previamente, para resolver la línea base.
+     * @return El snapshot reconstruido.
+     * @throws IOException Si la versión no es compatible, falta la base o el snapshot está corrupto.
+     */
+    public static Snapshot decode(ByteBuffer in, SnapshotHistory history) throws IOException {
+        try {
+            checkVersion(in);
+            int tick = getVarInt(in);
+            int baseTick = getVarInt(in) - 1;
+            Snapshot baseline = null;
+            if (baseTick >= 0) {
+                baseline = history.get(baseTick);
+                if (baseline == null) {
+                    throw new IOException("Línea base " + baseTick + " no disponible para el snapshot " + tick);
+                }
+            }
+
+            // --- Globales ---
+            int mask = in.get() & 0xFF;
+            if (baseline == null && (mask & G_ALL) != G_ALL) {
+                throw new IOException("Snapshot completo sin todos los datos globales");
+            }
+            int level = (mask & G_LEVEL) != 0 ? getVarInt(in) : baseline.getLevel();
+            boolean gameOver = (mask & G_FLAGS) != 0 ? (in.get() & FLAG_GAME_OVER) != 0 : baseline.isGameOver();
+            String status = (mask & G_STATUS) != 0 ? getString(in) : baseline.getStatusMessage();
+            int[] scoreIds;
+            int[] scoreValues;
+            if ((mask & G_SCORES) != 0) {
+                int n = getCount(in, 2); // Id y valor: al menos un byte cada uno
+                scoreIds = new int[n];
+                scoreValues = new int[n];
+                for (int i = 0; i < n; i++) {
+                    scoreIds[i] = getVarInt(in);
+                    scoreValues[i] = unzigzag(getVarInt(in));
+                }
+            } else {
+                scoreIds = baseline.scoreIds();
+                scoreValues = baseline.scoreValues();
+            }
+            int formationX;
+            int formationY;
+            if ((mask & G_FORMATION) != 0) {
+                formationX = unzigzag(getVarInt(in));
+                formationY = unzigzag(getVarInt(in));
+            } else {
+                formationX = baseline.getFormationX();
+                formationY = baseline.getFormationY();
+            }
+
+            // --- Eliminadas ---
+            int removedCount = getCount(in, 1);
+            int[] removed = new int[removedCount];
+            int lastId = 0;
+            for (int i = 0; i < removedCount; i++) {
+                lastId += getVarInt(in);
+                removed[i] = lastId;
+            }
+
+            // --- Nuevas o cambiadas (se aplican sobre una copia de los campos base) ---
+            int upsertCount = getCount(in, 2); // Id y cabecera: al menos un byte cada uno
+            int[] upIds = new int[upsertCount];
+            int[] upHeads = new int[upsertCount];
+            int[] upFields = new int[upsertCount * Snapshot.STRIDE];
+            lastId = 0;
+            for (int u = 0; u < upsertCount; u++) {
+                lastId += getVarInt(in);
+                upIds[u] = lastId;
+                int head = in.get() & 0xFF;
+                upHeads[u] = head;
+                int base = u * Snapshot.STRIDE;
+                if ((head & HEAD_NEW) != 0) {
+                    int type = head & ~HEAD_NEW;
+                    if (type <= 0 || type >= FIELD_KINDS.length) {
+                        throw new IOException("Tipo de entidad desconocido: " + type);
+                    }
+                    int[] kinds = FIELD_KINDS[type];
+                    for (int f = 0; f < kinds.length; f++) {
+                        upFields[base + f] = getField(in, kinds[f]);
+                    }
+                } else {
+                    for (int f = 0; f < Snapshot.STRIDE; f++) {
+                        if ((head & (1 << f)) != 0) upFields[base + f] = unzigzag(getVarInt(in));
+                    }
+                }
+            }
+
+            // --- Fusión: base (menos eliminadas) + nuevas/cambiadas, en orden de netId ---
+            int[] baseIds = baseline == null ? new int[0] : baseline.netIds();
+            int capacity = baseIds.length + upsertCount;
+            int[] ids = new int[capacity];
+            byte[] types = new byte[capacity];
+            int[] fields = new int[capacity * Snapshot.STRIDE];
+            int n = 0;
+            int i = 0, u = 0, r = 0;
+            while (i < baseIds.length || u < upsertCount) {
+                int baseId = i < baseIds.length ? baseIds[i] : Integer.MAX_VALUE;
+                int upId = u < upsertCount ? upIds[u] : Integer.MAX_VALUE;
+                if (baseId < upId) {
+                    // Entidad sin cambios, salvo que haya sido eliminada.
+                    while (r < removedCount && removed[r] < baseId) r++;
+                    if (r >= removedCount || removed[r] != baseId) {
+                        ids[n] = baseId;
+                        types[n] = (byte) baseline.getType(i);
+                        System.arraycopy(baseline.fields(), i * Snapshot.STRIDE, fields, n * Snapshot.STRIDE, Snapshot.STRIDE);
+                        n++;
+                    }
+                    i++;
+                } else if ((upHeads[u] & HEAD_NEW) != 0) {
+                    if (baseId == upId) i++; // ID reutilizado: la nueva entidad sustituye a la base
+                    ids[n] = upId;
+                    types[n] = (byte) (upHeads[u] & ~HEAD_NEW);
+                    System.arraycopy(upFields, u * Snapshot.STRIDE, fields, n * Snapshot.STRIDE, Snapshot.STRIDE);
+                    n++;
+                    u++;
+                } else {
+                    if (baseId != upId) {
+                        throw new IOException("Delta para entidad " + upId + " sin línea base");
+                    }
+                    ids[n] = upId;
+                    types[n] = (byte) baseline.getType(i);
+                    int dst = n * Snapshot.STRIDE;
+                    int src = i * Snapshot.STRIDE;
+                    for (int f = 0; f < Snapshot.STRIDE; f++) {
+                        int value = baseline.fields()[src + f];
+                        if ((upHeads[u] & (1 << f)) != 0) value += upFields[u * Snapshot.STRIDE + f];
+                        fields[dst + f] = value;
+                    }
+                    n++;
+                    i++;
+                    u++;
+                }
+            }
+
+            return new Snapshot(tick, level, gameOver, status, scoreIds, scoreValues, formationX, formationY,
+                    Arrays.copyOf(ids, n), Arrays.copyOf(types, n), Arrays.copyOf(fields, n * Snapshot.STRIDE));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot truncado", e);
+        }
+    }
+
+    /**
+     * Indica si un snapshot codificado es completo (sin línea base) sin decodificarlo.
+     * Lo usan los relés de espectadores, que reenvían los bytes tal cual.
+     * @param in Buffer posicionado al inicio del snapshot (no se modifica su posición).
+     * @return true si el snapshot no depende de ninguna línea base.
+     * @throws IOException Si la versión no es compatible o la cabecera está truncada.
+     */
+    public static boolean isFullSnapshot(ByteBuffer in) throws IOException {
+        ByteBuffer header = in.duplicate();
+        try {
+            checkVersion(header);
+            getVarInt(header); // tick
+            return getVarInt(header) == 0;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot truncado");
+        }
+    }
+
+    private static void checkVersion(ByteBuffer in) throws IOException {
+        int version = in.get() & 0xFF;
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Versión de snapshot incompatible: " + version);
+        }
+    }
+
+    // --- Utilidades de escritura ---
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private void putField(int kind, int value) {
+        switch (kind) {
+            case K_SHORT: putShort(value); break;
+            case K_INT: putInt(value); break;
+            case K_VARINT: putVarInt(value); break;
+            case K_ZIGZAG: putVarInt(zigzag(value)); break;
+            default: putByte(value); break;
+        }
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >> 24);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Escribe un entero sin signo en formato varint (7 bits por byte).
+     */
+    private void putVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // --- Utilidades de lectura ---
+    private static int getField(ByteBuffer in, int kind) throws IOException {
+        switch (kind) {
+            case K_SHORT: return in.getShort();
+            case K_INT: return in.getInt();
+            case K_VARINT: return getVarInt(in);
+            case K_ZIGZAG: return unzigzag(getVarInt(in));
+            default: return in.get() & 0xFF;
+        }
+    }
+
+    private static int getVarInt(ByteBuffer in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    /**
+     * Lee un contador (elementos o bytes) y lo valida antes de reservar arrays:
+     * negativo, o con más elementos de los que caben en lo que queda de la
+     * trama, indica un snapshot corrupto o malicioso.
+     * @param minBytesPerItem Bytes mínimos que ocupa cada elemento en la trama.
+     */
+    private static int getCount(ByteBuffer in, int minBytesPerItem) throws IOException {
+        int count = getVarInt(in);
+        if (count < 0 || count > in.remaining() / minBytesPerItem) {
+            throw new IOException("Contador inválido: " + count + " (quedan " + in.remaining() + " bytes)");
+        }
+        return count;
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        int length = getCount(in, 1);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // --- ZigZag: enteros con signo pequeños en pocos bytes ---
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.dirac.spaceinvaders.net;
+
+import java.util.Arrays;
+
+/**
+ * Clase SnapshotHistory: Anillo de tamaño fijo con los últimos snapshots por tick.
+ *
+ * El servidor la usa para encontrar la línea base (baseline) que cada cliente
+ * ha confirmado, y el cliente para reconstruir el estado completo a partir
+ * de un delta. No es segura para hilos: cada lado la usa desde un solo hilo.
+ */
+public class SnapshotHistory {
+
+    // Segundos de historial: un ACK que tarde menos que esto aún encuentra su línea base.
+    public static final int HISTORY_SECONDS = 3;
+    // Número mínimo de ticks que se conservan (a 20 Hz, algo más de 3 segundos).
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private Snapshot[] ring;
+
+    public SnapshotHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SnapshotHistory(int capacity) {
+        this.ring = new Snapshot[capacity];
+    }
+
+    /**
+     * Capacidad que cubre {@link #HISTORY_SECONDS} a la frecuencia dada.
+     * Con la frecuencia configurable, un tamaño fijo se quedaría corto a 60 Hz.
+     * @param tickRateHz Frecuencia de la simulación.
+     * @return Número de ticks a conservar (nunca menos que {@link #DEFAULT_CAPACITY}).
+     */
+    public static int capacityFor(int tickRateHz) {
+        return Math.max(DEFAULT_CAPACITY, tickRateHz * HISTORY_SECONDS);
+    }
+
+    /**
+     * Guarda un snapshot, sustituyendo al que ocupaba su posición en el anillo.
+     * @param snapshot El snapshot a guardar.
+     */
+    public void put(Snapshot snapshot) {
+        ring[Math.floorMod(snapshot.getTick(), ring.length)] = snapshot;
+    }
+
+    /**
+     * Busca el snapshot de un tick concreto.
+     * @param tick Tick buscado.
+     * @return El snapshot, o null si no existe o ya fue sobrescrito.
+     */
+    public Snapshot get(int tick) {
+        if (tick < 0) return null;
+        Snapshot s = ring[Math.floorMod(tick, ring.length)];
+        return (s != null && s.getTick() == tick) ? s : null;
+    }
+
+    /**
+     * Vacía el historial (por ejemplo, al reconectar).
+     */
+    public void clear() {
+        Arrays.fill(ring, null);
+    }
+
+    /**
+     * Vacía el historial y cambia su capacidad (por ejemplo, al conocer la
+     * frecuencia del servidor tras conectar).
+     * @param capacity Nuevo número de ticks a conservar.
+     */
+    public void reset(int capacity) {
+        if (ring.length == capacity) {
+            clear();
+        } else {
+            ring = new Snapshot[capacity];
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.dirac.spaceinvaders.net;
+
+import java.util.Arrays;
+
+/**
+ * Clase SnapshotInterpolator: Búfer de los últimos snapshots recibidos, con su
+ * instante de llegada, para dibujar el juego un poco en el pasado.
+ *
+ * El cliente dibuja a 60 FPS aunque los snapshots lleguen a 20 Hz: en cada
+ * cuadro pide el estado en "ahora - retardo" y se interpolan las posiciones
+ * entre los dos snapshots que lo rodean. Los ticks se convierten a tiempo del
+ * cliente con un desfase estimado a partir de las llegadas (baja en cuanto un
+ * snapshot llega antes de lo esperado, sube poco a poco), así que la
+ * variación de latencia de la red queda absorbida por el retardo.
+ *
+ * Si el siguiente snapshot se retrasa más que el retardo, las posiciones se
+ * extrapolan como mucho maxExtrapolationNanos y después se quedan quietas.
+ *
+ * Seguro para hilos: el hilo de red añade y el EDT muestrea.
+ */
+public class SnapshotInterpolator {
+
+    // --- Constantes ---
+    public static final int DEFAULT_CAPACITY = 32; // Snapshots guardados (a 20 Hz, más de un segundo)
+    private static final int OFFSET_RISE_SHIFT = 5; // El desfase sube 1/32 de la diferencia por llegada tardía
+    private static final int TELEPORT_PX = 100;     // Saltos mayores (reaparición, cambio de nivel) no se interpolan
+
+    // --- Atributos ---
+    private final Snapshot[] ring;
+    private int newest = -1;  // Índice del último snapshot en el anillo (-1 si vacío)
+    private int count = 0;
+    private final long delayNanos;
+    private final long maxExtrapolationNanos;
+    private long tickNanos;
+    private long offsetNanos;  // Llegada estimada del tick 0, en tiempo del cliente (System.nanoTime)
+
+    /**
+     * @param tickRateHz Frecuencia de la simulación del servidor (ticks por segundo).
+     * @param delayNanos Retardo de dibujo respecto al snapshot más reciente.
+     * @param maxExtrapolationNanos Extrapolación máxima cuando faltan snapshots.
+     */
+    public SnapshotInterpolator(int tickRateHz, long delayNanos, long maxExtrapolationNanos) {
+        this.ring = new Snapshot[DEFAULT_CAPACITY];
+        this.tickNanos = 1_000_000_000L / tickRateHz;
+        this.delayNanos = delayNanos;
+        this.maxExtrapolationNanos = maxExtrapolationNanos;
+    }
+
+    /**
+     * Vacía el búfer y fija la frecuencia del servidor (al conectar).
+     * @param tickRateHz Ticks por segundo del servidor.
+     */
+    public synchronized void reset(int tickRateHz) {
+        Arrays.fill(ring, null);
+        newest = -1;
+        count = 0;
+        tickNanos = 1_000_000_000L / tickRateHz;
+    }
+
+    /**
+     * Añade un snapshot recién aplicado. Los ticks deben ser crecientes.
+     * @param snapshot Snapshot reconstruido.
+     * @param arrivalNanos Instante de llegada (System.nanoTime()).
+     */
+    public synchronized void add(Snapshot snapshot, long arrivalNanos) {
+        if (newest >= 0 && snapshot.getTick() <= ring[newest].getTick()) return;
+        long sample = arrivalNanos - snapshot.getTick() * tickNanos;
+        if (count == 0 || sample < offsetNanos) {
+            offsetNanos = sample; // Llegada más rápida que la estimada: se adopta enseguida
+        } else {
+            offsetNanos += (sample - offsetNanos) >> OFFSET_RISE_SHIFT;
+        }
+        newest = (newest + 1) % ring.length;
+        ring[newest] = snapshot;
+        if (count < ring.length) count++;
+    }
+
+    /**
+     * Estado a dibujar en este instante: interpolado entre los dos snapshots que
+     * rodean a "ahora - retardo", o extrapolado (con límite) si no ha llegado el siguiente.
+     * @param nowNanos Instante actual (System.nanoTime()).
+     * @return El snapshot a dibujar, o null si aún no hay ninguno.
+     */
+    public synchronized Snapshot sample(long nowNanos) {
+        if (count == 0) return null;
+        Snapshot last = ring[newest];
+        if (count == 1) return last;
+        double renderTick = (double) (nowNanos - delayNanos - offsetNanos) / tickNanos;
+
+        if (renderTick >= last.getTick()) {
+            Snapshot previous = ring[index(1)];
+            double ahead = Math.min(renderTick - last.getTick(), (double) maxExtrapolationNanos / tickNanos);
+            return interpolate(previous, last, 1.0 + ahead / (last.getTick() - previous.getTick()));
+        }
+        // Del más reciente hacia atrás, el primero que no es posterior al instante de dibujo.
+        for (int back = 1; back < count; back++) {
+            Snapshot from = ring[index(back)];
+            if (from.getTick() <= renderTick) {
+                Snapshot to = ring[index(back - 1)];
+                return interpolate(from, to, (renderTick - from.getTick()) / (to.getTick() - from.getTick()));
+            }
+        }
+        return ring[index(count - 1)]; // Más antiguo que todo el búfer: el más viejo disponible
+    }
+
+    private int index(int back) {
+        return Math.floorMod(newest - back, ring.length);
+    }
+
+    /**
+     * Mezcla dos snapshots: entidades y datos globales de {@code to}, con las posiciones
+     * de las entidades presentes en ambos (y el desplazamiento de la formación) a
+     * la fracción {@code alpha} entre {@code from} y {@code to} (mayor que 1 = extrapolación).
+     * El tick del resultado es el del snapshot más cercano al instante dibujado: es
+     * el que el cliente declara ver en sus comandos (compensación de latencia).
+     */
+    static Snapshot interpolate(Snapshot from, Snapshot to, double alpha) {
+        if (alpha == 1.0) return to;
+        int[] toIds = to.netIds();
+        int[] fromIds = from.netIds();
+        byte[] toTypes = to.types();
+        int[] toFields = to.fields();
+        int[] fromFields = from.fields();
+        int[] fields = toFields.clone();
+
+        // Ambos arrays están ordenados por netId: se recorren a la vez.
+        int j = 0;
+        for (int i = 0; i < toIds.length; i++) {
+            while (j < fromIds.length && fromIds[j] < toIds[i]) j++;
+            if (j == fromIds.length) break;
+            if (fromIds[j] != toIds[i] || from.types()[j] != toTypes[i]) continue;
+            int base = i * Snapshot.STRIDE;
+            int fromBase = j * Snapshot.STRIDE;
+            if (toTypes[i] == Snapshot.TYPE_ALIEN
+                    && fromFields[fromBase + Snapshot.F_ALIEN_FLAGS] != toFields[base + Snapshot.F_ALIEN_FLAGS]) {
+                continue; // Salió de la formación: coordenadas con distinto origen
+            }
+            fields[base + Snapshot.F_X] = lerp(fromFields[fromBase + Snapshot.F_X], toFields[base + Snapshot.F_X], alpha);
+            fields[base + Snapshot.F_Y] = lerp(fromFields[fromBase + Snapshot.F_Y], toFields[base + Snapshot.F_Y], alpha);
+        }
+        return new Snapshot(alpha < 0.5 ? from.getTick() : to.getTick(), to.getLevel(), to.isGameOver(), to.getStatusMessage(),
+                to.scoreIds(), to.scoreValues(),
+                lerp(from.getFormationX(), to.getFormationX(), alpha),
+                lerp(from.getFormationY(), to.getFormationY(), alpha),
+                toIds, toTypes, fields);
+    }
+
+    private static int lerp(int a, int b, double alpha) {
+        if (Math.abs(b - a) > TELEPORT_PX) return b;
+        return (int) Math.round(a + (b - a) * alpha);
+    }
+}
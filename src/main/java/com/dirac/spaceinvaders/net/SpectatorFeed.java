@@ -0,0 +1,175 @@
+package com.dirac.spaceinvaders.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;                       // Tramas compartidas (sólo lectura)
+import java.nio.channels.SocketChannel;           // Conexión no bloqueante con cada espectador
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList; // Altas desde el aceptador, recorridos al publicar
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clase SpectatorFeed: Flujo de snapshots de sólo lectura para espectadores.
+ *
+ * Todos los espectadores reciben exactamente los mismos bytes: cada trama se
+ * codifica una vez (delta respecto a la trama anterior del flujo, o completa)
+ * y se escribe en cada socket con duplicate(). Los espectadores no tienen
+ * entrada ni confirmaciones, ni ocupan plaza de jugador.
+ *
+ * Un espectador que se queda atrás (su socket no admite la trama) pierde esa
+ * trama y las siguientes hasta el próximo snapshot completo, porque los deltas
+ * intermedios ya no tendrían base en su lado. Las altas y los retrasos piden un
+ * snapshot completo al codificador ({@link #takeKeyframeRequest}); además, el
+ * codificador envía uno completo periódicamente para los relés, que no codifican.
+ *
+ * {@link #publish} debe llamarse siempre desde un único hilo a la vez
+ * (la etapa de envío de la sala, o el hilo de subida de un relé).
+ */
+public class SpectatorFeed {
+
+    // --- Constantes ---
+    private static final long STALL_TIMEOUT_NANOS = 10_000_000_000L; // Espectador atascado: se desconecta
+
+    /**
+     * Conexión de un espectador. Se escribe sin bloquear desde el hilo que publica.
+     */
+    private static final class Viewer {
+        final SocketChannel channel;
+        ByteBuffer current;            // Trama a medio escribir (null si ninguna)
+        boolean needsKeyframe = true;  // No puede aplicar deltas hasta recibir un snapshot completo
+        long stalledSince = 0;         // Desde cuándo no se puede escribir (0 = al día)
+
+        Viewer(SocketChannel channel, int tickRateHz) {
+            this.channel = channel;
+            this.current = WireProtocol.idFrame(WireProtocol.SPECTATOR_ID, tickRateHz);
+        }
+    }
+
+    // --- Atributos ---
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private volatile boolean keyframeRequested = false;
+    private volatile boolean closed = false;
+    private final AtomicLong skippedFrames = new AtomicLong(); // Tramas perdidas por espectadores lentos
+    private volatile int tickRateHz; // Se anuncia en el MSG_ID: el cliente lo usa para interpolar
+
+    /**
+     * @param tickRateHz Frecuencia de la simulación de origen (0 si aún no se conoce, como en un relé).
+     */
+    public SpectatorFeed(int tickRateHz) {
+        this.tickRateHz = tickRateHz;
+    }
+
+    /**
+     * Añade un espectador (cualquier hilo). Su primera trama es MSG_ID con
+     * {@link WireProtocol#SPECTATOR_ID}; después, snapshots a partir del próximo completo.
+     * @param channel Canal ya conectado y en modo no bloqueante.
+     */
+    public void addViewer(SocketChannel channel) {
+        if (closed) {
+            closeQuietly(channel);
+            return;
+        }
+        viewers.add(new Viewer(channel, tickRateHz));
+        keyframeRequested = true;
+    }
+
+    /**
+     * Entrega una trama MSG_SNAPSHOT a todos los espectadores.
+     * @param frame Trama completa de sólo lectura (no se modifica su posición).
+     * @param keyframe true si el snapshot es completo (no depende de ninguna base).
+     */
+    public void publish(ByteBuffer frame, boolean keyframe) {
+        long now = System.nanoTime();
+        for (Viewer viewer : viewers) {
+            try {
+                deliver(viewer, frame, keyframe, now);
+            } catch (IOException e) {
+                viewers.remove(viewer);
+                closeQuietly(viewer.channel);
+            }
+        }
+    }
+
+    private void deliver(Viewer viewer, ByteBuffer frame, boolean keyframe, long now) throws IOException {
+        // Primero, lo que quedó pendiente de la trama anterior.
+        if (viewer.current != null) {
+            viewer.channel.write(viewer.current);
+            if (viewer.current.hasRemaining()) {
+                // Sigue atrás: esta trama se pierde y necesitará un snapshot completo.
+                if (viewer.stalledSince == 0) viewer.stalledSince = now;
+                if (now - viewer.stalledSince > STALL_TIMEOUT_NANOS) throw new IOException("Espectador atascado");
+                skip(viewer);
+                return;
+            }
+            viewer.current = null;
+            viewer.stalledSince = 0;
+        }
+        if (viewer.needsKeyframe && !keyframe) return;
+        viewer.needsKeyframe = false;
+        ByteBuffer copy = frame.duplicate();
+        viewer.channel.write(copy);
+        if (copy.hasRemaining()) {
+            viewer.current = copy; // Se termina en la siguiente publicación
+        }
+    }
+
+    private void skip(Viewer viewer) {
+        skippedFrames.incrementAndGet();
+        if (!viewer.needsKeyframe) {
+            viewer.needsKeyframe = true;
+            keyframeRequested = true;
+        }
+    }
+
+    /**
+     * Obliga a todos los espectadores a esperar al siguiente snapshot completo
+     * (por ejemplo, cuando un relé pierde tramas al reconectar con su origen).
+     * Mismo hilo que {@link #publish}.
+     */
+    public void resync() {
+        for (Viewer viewer : viewers) {
+            viewer.needsKeyframe = true;
+        }
+    }
+
+    /**
+     * Fija la frecuencia anunciada a los espectadores que se conecten a partir de ahora.
+     * @param tickRateHz Ticks por segundo del servidor de origen.
+     */
+    public void setTickRateHz(int tickRateHz) {
+        this.tickRateHz = tickRateHz;
+    }
+
+    /**
+     * Consume la petición de snapshot completo (altas o espectadores que se quedaron atrás).
+     * @return true si la siguiente trama debe ser un snapshot completo.
+     */
+    public boolean takeKeyframeRequest() {
+        if (!keyframeRequested) return false;
+        keyframeRequested = false;
+        return true;
+    }
+
+    /**
+     * Cierra todas las conexiones de espectadores; las altas posteriores se rechazan.
+     */
+    public void close() {
+        closed = true;
+        for (Viewer viewer : viewers) {
+            closeQuietly(viewer.channel);
+        }
+        viewers.clear();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Ya estaba cerrado
+        }
+    }
+
+    // --- Getters ---
+    public boolean hasViewers() { return !viewers.isEmpty(); }
+    public int getViewerCount() { return viewers.size(); }
+    public long getSkippedFrames() { return skippedFrames.get(); }
+}
@@ -0,0 +1,178 @@
+package com.dirac.spaceinvaders.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;            // Aceptación y handshake sin bloquear
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.function.IntFunction;        // Sala pedida -> flujo de espectadores
+
+/**
+ * Clase SpectatorServer: Puerto de espectadores. Acepta conexiones, lee su
+ * trama MSG_SPECTATE y entrega el canal al {@link SpectatorFeed} de la sala
+ * pedida. A partir de ahí el hilo de este servidor ya no toca la conexión:
+ * las escrituras las hace quien publica en el flujo.
+ *
+ * Lo usan tanto el servidor de juego como los relés de espectadores.
+ */
+public class SpectatorServer implements Runnable {
+
+    // --- Constantes ---
+    private static final int HANDSHAKE_BYTES = WireProtocol.FRAME_HEADER_BYTES + 4;
+    private static final long HANDSHAKE_TIMEOUT_MS = 5000; // Conexiones que no envían la petición
+
+    /**
+     * Conexión aceptada que aún no ha enviado su petición.
+     */
+    private static final class Pending {
+        final ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_BYTES);
+        final long acceptedAt = System.currentTimeMillis();
+    }
+
+    // --- Atributos ---
+    private final int port;
+    private final IntFunction<SpectatorFeed> feedForRoom; // null = sala inexistente
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * @param port Puerto TCP de espectadores.
+     * @param feedForRoom Devuelve el flujo de la sala pedida (o de la primera, con
+     *                    {@link WireProtocol#ANY_ROOM}); null si no existe.
+     */
+    public SpectatorServer(int port, IntFunction<SpectatorFeed> feedForRoom) {
+        this.port = port;
+        this.feedForRoom = feedForRoom;
+    }
+
+    // --- Ciclo de Vida ---
+    /**
+     * Abre el puerto e inicia el hilo aceptador.
+     * @throws IOException Si el puerto no se puede abrir.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            // El hilo aceptador no llegó a arrancar: nadie más cerrará estos canales.
+            if (serverChannel != null) {
+                closeQuietly(serverChannel);
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+            throw e;
+        }
+        running = true;
+        thread = new Thread(this, "spectator-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cierra el puerto y las conexiones que aún no habían enviado su petición.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // --- Bucle del Aceptador ---
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        readHandshake(key);
+                    }
+                }
+                expireHandshakes();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Error en el puerto de espectadores: " + e.getMessage());
+            }
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Ya se está cerrando
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Pending());
+    }
+
+    /**
+     * Lee la petición MSG_SPECTATE y, cuando está completa, pasa el canal al flujo de la sala.
+     */
+    private void readHandshake(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Pending pending = (Pending) key.attachment();
+        try {
+            if (channel.read(pending.handshake) < 0) throw new IOException("Conexión cerrada");
+            if (pending.handshake.hasRemaining()) return;
+            pending.handshake.flip();
+            byte type = pending.handshake.get();
+            int length = pending.handshake.getInt();
+            if (type != WireProtocol.MSG_SPECTATE || length != 4) throw new IOException("Petición de espectador inválida");
+            int roomId = pending.handshake.getInt();
+            SpectatorFeed feed = feedForRoom.apply(roomId);
+            if (feed == null) throw new IOException("Sala " + roomId + " no disponible");
+            key.cancel(); // El canal sigue abierto; desde ahora sólo escribe el flujo
+            feed.addViewer(channel);
+            System.out.println("Espectador " + channel.socket().getRemoteSocketAddress()
+                    + " viendo la sala " + roomId + " (" + feed.getViewerCount() + " espectadores).");
+        } catch (IOException e) {
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    private void expireHandshakes() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Pending
+                    && now - ((Pending) key.attachment()).acceptedAt > HANDSHAKE_TIMEOUT_MS) {
+                key.cancel();
+                closeQuietly(key.channel());
+            }
+        }
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Ya estaba cerrado
+        }
+    }
+}
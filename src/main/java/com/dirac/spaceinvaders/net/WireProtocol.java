@@ -0,0 +1,274 @@
+package com.dirac.spaceinvaders.net;
+
+import java.io.DataInputStream;  // Para leer tramas del socket
+import java.io.DataOutputStream; // Para escribir tramas en el socket
+import java.io.IOException;      // Errores de red o de protocolo
+import java.nio.BufferUnderflowException; // Datagramas truncados
+import java.nio.ByteBuffer;      // Tramas ya codificadas y compartidas
+import java.util.List;           // Cuadros de entrada redundantes
+
+/**
+ * Clase WireProtocol: Define el formato de las tramas binarias que viajan
+ * entre Cliente y Servidor, sustituyendo a ObjectOutputStream/ObjectInputStream.
+ *
+ * Cada trama tiene la forma:
+ * <pre>
+ *   [tipo: 1 byte][longitud: 4 bytes, big-endian][payload: longitud bytes]
+ * </pre>
+ * El contenido del payload depende del tipo de mensaje.
+ *
+ * Con el transporte UDP opcional, cada datagrama contiene exactamente una trama
+ * con el mismo formato. Por UDP sólo viajan snapshots (servidor -> cliente,
+ * numerados por su tick y sin garantía de entrega) y paquetes de entrada
+ * (cliente -> servidor, con los últimos cuadros repetidos). El handshake
+ * sigue yendo siempre por TCP.
+ */
+public final class WireProtocol {
+
+    // --- Versión del Protocolo ---
+    // Se incrementa cada vez que cambia el formato de alguna trama o del snapshot.
+    public static final int PROTOCOL_VERSION = 6;
+
+    // --- Tipos de Mensaje (Servidor -> Cliente) ---
+    public static final byte MSG_ID = 1;       // Handshake: [versión: 1 byte][playerId: 4 bytes][tick del servidor en Hz: 2 bytes]
+    public static final byte MSG_SNAPSHOT = 2; // Snapshot codificado con SnapshotCodec (TCP o UDP)
+    public static final byte MSG_UDP_OFFER = 5; // TCP: [token: 4 bytes][puerto UDP: 2 bytes]
+
+    // --- Tipos de Mensaje (Cliente -> Servidor) ---
+    // Comando de entrada: [tick del cliente: 4 bytes][botones: 1 byte][tick del snapshot dibujado: 4 bytes]
+    public static final byte MSG_COMMAND = 3;
+    public static final byte MSG_ACK = 4;      // Confirmación: [tick del último snapshot aplicado: 4 bytes]
+    // UDP: [playerId: 4][token: 4][tick confirmado: 4][n: 1] y n comandos [tick del cliente: 4][botones: 1][tick dibujado: 4]
+    public static final byte MSG_INPUT = 6;
+    // Espectador (primera trama, en el puerto de espectadores): [sala: 4 bytes, -1 = la primera abierta]
+    public static final byte MSG_SPECTATE = 7;
+
+    // --- Espectadores ---
+    // ID que reciben los espectadores en MSG_ID: no controlan ningún jugador.
+    public static final int SPECTATOR_ID = -1;
+    public static final int ANY_ROOM = -1;
+
+    // --- Límites ---
+    public static final int FRAME_HEADER_BYTES = 5;       // 1 byte de tipo + 4 de longitud
+    public static final int MAX_FRAME_LENGTH = 1 << 20;   // 1 MiB, protege contra tramas corruptas
+    public static final int MAX_DATAGRAM_BYTES = 1200;    // Por debajo del MTU típico: sin fragmentación IP
+    public static final int INPUT_REDUNDANCY = 3;         // Comandos de entrada repetidos en cada paquete UDP
+    public static final int COMMAND_BYTES = 9;            // Comando codificado (TCP y UDP)
+
+    private WireProtocol() {
+        // Clase de utilidades, no se instancia.
+    }
+
+    /**
+     * Clase Frame: Una trama ya leída del socket (tipo + payload).
+     */
+    public static final class Frame {
+        private final byte type;
+        private final byte[] payload;
+
+        public Frame(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() { return type; }
+        public byte[] getPayload() { return payload; }
+    }
+
+    // --- Escritura ---
+    /**
+     * Construye una trama completa (cabecera + payload) en un buffer de sólo lectura.
+     * El mismo buffer puede escribirse en varios sockets usando duplicate(),
+     * ya que ninguno de ellos puede modificar su contenido.
+     * @param type Tipo de mensaje (MSG_*).
+     * @param payload Buffer con el contenido.
+     * @param length Número de bytes del payload.
+     * @return La trama lista para enviar, posicionada al inicio.
+     */
+    public static ByteBuffer encodeFrame(byte type, byte[] payload, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + length);
+        frame.put(type);
+        frame.putInt(length);
+        frame.put(payload, 0, length);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Construye la trama de handshake con el ID asignado al jugador.
+     * @param playerId ID del jugador.
+     * @param tickRateHz Frecuencia de la simulación: el cliente muestrea sus controles
+     *                   a este ritmo (un comando por tick) y convierte ticks a tiempo al interpolar.
+     * @return La trama lista para encolar en el ClientHandler.
+     */
+    public static ByteBuffer idFrame(int playerId, int tickRateHz) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + 7);
+        frame.put(MSG_ID);
+        frame.putInt(7);
+        frame.put((byte) PROTOCOL_VERSION);
+        frame.putInt(playerId);
+        frame.putShort((short) tickRateHz);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Construye la trama que ofrece al cliente el transporte UDP.
+     * @param token Token de sesión que el cliente debe incluir en cada datagrama.
+     * @param udpPort Puerto UDP del servidor.
+     * @return La trama lista para encolar en el ClientHandler.
+     */
+    public static ByteBuffer udpOfferFrame(int token, int udpPort) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + 6);
+        frame.put(MSG_UDP_OFFER);
+        frame.putInt(6);
+        frame.putInt(token);
+        frame.putShort((short) udpPort);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Escribe un paquete de entrada UDP con la confirmación y los últimos comandos.
+     * Con cero comandos sirve también de saludo inicial y de keepalive.
+     * @param out Buffer de destino (se limpia antes de escribir y queda listo para enviar).
+     * @param playerId ID del jugador.
+     * @param token Token recibido en MSG_UDP_OFFER.
+     * @param ackTick Último snapshot aplicado (-1 si ninguno).
+     * @param commands Comandos a incluir, del más antiguo al más reciente.
+     */
+    public static void writeInputDatagram(ByteBuffer out, int playerId, int token, int ackTick, List<InputCommand> commands) {
+        out.clear();
+        out.put(MSG_INPUT);
+        out.putInt(13 + COMMAND_BYTES * commands.size());
+        out.putInt(playerId);
+        out.putInt(token);
+        out.putInt(ackTick);
+        out.put((byte) commands.size());
+        for (InputCommand c : commands) {
+            out.putInt(c.getClientTick());
+            out.put((byte) c.getButtons());
+            out.putInt(c.getViewTick());
+        }
+        out.flip();
+    }
+
+    /**
+     * Lee los comandos de un paquete MSG_INPUT a partir del byte con su número.
+     * @param in Buffer posicionado en el contador de comandos.
+     * @param dest Lista donde se añaden los comandos leídos.
+     * @throws IOException Si el datagrama está truncado.
+     */
+    public static void readInputCommands(ByteBuffer in, List<InputCommand> dest) throws IOException {
+        try {
+            int count = in.get() & 0xFF;
+            for (int i = 0; i < count; i++) {
+                int clientTick = in.getInt();
+                int buttons = in.get() & 0xFF;
+                int viewTick = in.getInt();
+                dest.add(new InputCommand(clientTick, buttons, viewTick));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Paquete de entrada truncado");
+        }
+    }
+
+    /**
+     * Escribe un comando de entrada del cliente como trama TCP.
+     * @param out Stream de salida.
+     * @param command Comando a enviar.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void writeCommandFrame(DataOutputStream out, InputCommand command) throws IOException {
+        out.writeByte(MSG_COMMAND);
+        out.writeInt(COMMAND_BYTES);
+        out.writeInt(command.getClientTick());
+        out.writeByte(command.getButtons());
+        out.writeInt(command.getViewTick());
+    }
+
+    /**
+     * Escribe la confirmación del último snapshot aplicado por el cliente.
+     * El servidor lo usará como línea base para los siguientes deltas.
+     * @param out Stream de salida.
+     * @param tick Tick del snapshot aplicado.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void writeAckFrame(DataOutputStream out, int tick) throws IOException {
+        out.writeByte(MSG_ACK);
+        out.writeInt(4);
+        out.writeInt(tick);
+    }
+
+    /**
+     * Escribe la petición de un espectador para ver una sala.
+     * @param out Stream de salida.
+     * @param roomId Sala a ver, o ANY_ROOM.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void writeSpectateFrame(DataOutputStream out, int roomId) throws IOException {
+        out.writeByte(MSG_SPECTATE);
+        out.writeInt(4);
+        out.writeInt(roomId);
+    }
+
+    // --- Lectura ---
+    /**
+     * Lee la siguiente trama completa del stream (bloqueante).
+     * @param in Stream de entrada.
+     * @return La trama leída.
+     * @throws IOException Si el stream se cierra o la longitud es inválida.
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Longitud de trama inválida: " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    /**
+     * Interpreta el payload de una trama MSG_ID.
+     * @param payload Contenido de la trama.
+     * @return El ID del jugador.
+     * @throws IOException Si la versión del protocolo no coincide o el payload es inválido.
+     */
+    public static int parseIdPayload(byte[] payload) throws IOException {
+        if (payload.length != 7) {
+            throw new IOException("Trama de ID con longitud inesperada: " + payload.length);
+        }
+        int version = payload[0] & 0xFF;
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException("Versión de protocolo incompatible: servidor=" + version + ", cliente=" + PROTOCOL_VERSION);
+        }
+        return ((payload[1] & 0xFF) << 24) | ((payload[2] & 0xFF) << 16) | ((payload[3] & 0xFF) << 8) | (payload[4] & 0xFF);
+    }
+
+    /**
+     * Frecuencia de la simulación anunciada en una trama MSG_ID ya validada con {@link #parseIdPayload}.
+     * @param payload Contenido de la trama.
+     * @return Ticks por segundo del servidor (0 si un relé aún no la conocía).
+     */
+    public static int parseIdTickRate(byte[] payload) {
+        return ((payload[5] & 0xFF) << 8) | (payload[6] & 0xFF);
+    }
+
+    /**
+     * Interpreta el payload de una trama MSG_UDP_OFFER.
+     * @param payload Contenido de la trama.
+     * @return {token, puerto UDP}.
+     * @throws IOException Si el payload es inválido.
+     */
+    public static int[] parseUdpOfferPayload(byte[] payload) throws IOException {
+        if (payload.length != 6) {
+            throw new IOException("Oferta UDP con longitud inesperada: " + payload.length);
+        }
+        ByteBuffer b = ByteBuffer.wrap(payload);
+        int token = b.getInt();
+        int port = b.getShort() & 0xFFFF;
+        return new int[] { token, port };
+    }
+}